@@ -40,14 +40,17 @@ dependencies {
     implementation(libs.guava)
 
     implementation(libs.xerial.sqlite)
+    implementation(libs.hikaricp)
     jooqGenerator(libs.xerial.sqlite)
     jooqGenerator(project(":jooq-extensions"))
 
     implementation(platform(SpringBootPlugin.BOM_COORDINATES))
     implementation(libs.spring.boot.starter.web)
     implementation(libs.spring.boot.starter.security)
-
-    implementation(libs.bucket4j.core)
+    implementation(libs.spring.boot.starter.actuator)
+    implementation(libs.jackson.dataformat.smile)
+    implementation(libs.jackson.dataformat.cbor)
+    runtimeOnly(libs.micrometer.registry.prometheus)
 
     implementation(libs.apache.commons.compress)
 
@@ -18,8 +18,11 @@
 
 package org.enginehub.cassettedeck;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.enginehub.cassettedeck.data.blob.DiskStorage;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -35,7 +38,6 @@ import java.util.concurrent.Semaphore;
 
 @Configuration
 @PropertySource("classpath:application.properties")
-@EnableScheduling
 public class AppConfig {
     @Bean
     public HttpClient httpClient() {
@@ -75,8 +77,40 @@ public class AppConfig {
 
     @Bean
     public Semaphore concurrentDownloads(
-        @Value("${network.concurrent-downloads:5}") int maxConcurrentDownloads
+        @Value("${network.concurrent-downloads:5}") int maxConcurrentDownloads,
+        MeterRegistry meterRegistry
     ) {
-        return new Semaphore(maxConcurrentDownloads);
+        var semaphore = new Semaphore(maxConcurrentDownloads);
+        Gauge.builder("cassettedeck.download.permits.available", semaphore, Semaphore::availablePermits)
+            .description("Download permits not currently in use")
+            .register(meterRegistry);
+        Gauge.builder("cassettedeck.download.permits.queued", semaphore, Semaphore::getQueueLength)
+            .description("Threads waiting for a download permit")
+            .register(meterRegistry);
+        return semaphore;
+    }
+
+    @Bean
+    public Semaphore concurrentGenerators(
+        @Value("${data-gen.concurrent-generators:8}") int maxConcurrentGenerators,
+        MeterRegistry meterRegistry
+    ) {
+        var semaphore = new Semaphore(maxConcurrentGenerators);
+        Gauge.builder("cassettedeck.datagen.active", semaphore, s -> maxConcurrentGenerators - s.availablePermits())
+            .description("Data generators currently running")
+            .register(meterRegistry);
+        Gauge.builder("cassettedeck.datagen.queued", semaphore, Semaphore::getQueueLength)
+            .description("Versions waiting for a data generator slot")
+            .register(meterRegistry);
+        return semaphore;
+    }
+
+    /**
+     * Scheduled tasks are turned off for one-shot modes like the backfill, which drive the work themselves.
+     */
+    @Configuration
+    @EnableScheduling
+    @ConditionalOnProperty(name = "scheduling.enabled", matchIfMissing = true)
+    public static class SchedulingConfig {
     }
 }
@@ -22,13 +22,23 @@
 package org.enginehub.cassettedeck;
 
 import org.apache.logging.log4j.LogManager;
+import org.enginehub.cassettedeck.data.upstream.BackfillRunner;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jooq.JooqAutoConfiguration;
 import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.util.Arrays;
 
 @SpringBootApplication(
     exclude = {
-        R2dbcAutoConfiguration.class
+        R2dbcAutoConfiguration.class,
+        // We configure our own SQLite pools and jOOQ contexts in DbConfiguration
+        DataSourceAutoConfiguration.class,
+        JooqAutoConfiguration.class
     }
 )
 public class CassetteDeck {
@@ -38,6 +48,14 @@ public class CassetteDeck {
         System.setProperty("org.jooq.no-logo", "true");
         System.setProperty("org.jooq.no-tips", "true");
         try {
+            if (args.length > 0 && args[0].equals(BackfillRunner.PROFILE)) {
+                // One-shot mode: no web server, load everything, then exit
+                var context = new SpringApplicationBuilder(CassetteDeck.class)
+                    .web(WebApplicationType.NONE)
+                    .profiles(BackfillRunner.PROFILE)
+                    .run(Arrays.copyOfRange(args, 1, args.length));
+                System.exit(SpringApplication.exit(context));
+            }
             SpringApplication.run(CassetteDeck.class, args);
         } catch (Throwable t) {
             // Spring replaced the uncaught exception handler, so we need to do this manually.
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.controller;
+
+import org.enginehub.cassettedeck.exception.InvalidParameterException;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.SequencedSet;
+
+/**
+ * Validation for the keys given to batch endpoints.
+ */
+final class BatchKeys {
+    /**
+     * De-duplicate the keys, keeping their order, and check there aren't too many.
+     *
+     * @param keys the keys from the request
+     * @param max the maximum number of distinct keys
+     * @param parameterName the request parameter the keys came from, for errors
+     * @return the distinct keys
+     */
+    static <T> SequencedSet<T> distinct(List<T> keys, int max, String parameterName) {
+        var distinct = new LinkedHashSet<>(keys);
+        if (distinct.size() > max) {
+            throw new InvalidParameterException(parameterName);
+        }
+        return distinct;
+    }
+
+    private BatchKeys() {
+    }
+}
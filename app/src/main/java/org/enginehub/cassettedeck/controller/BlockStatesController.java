@@ -18,38 +18,181 @@
 
 package org.enginehub.cassettedeck.controller;
 
-import org.enginehub.cassettedeck.data.downstream.BlockStates;
+import jakarta.servlet.http.HttpServletRequest;
+import org.enginehub.cassettedeck.data.downstream.BlockFilter;
+import org.enginehub.cassettedeck.data.downstream.WireFormat;
+import org.enginehub.cassettedeck.exception.InvalidParameterException;
 import org.enginehub.cassettedeck.exception.NotFoundException;
+import org.enginehub.cassettedeck.service.BlockStateDiffService;
 import org.enginehub.cassettedeck.service.BlockStatesService;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping("/block-states")
 public class BlockStatesController {
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
     private final BlockStatesService blockStatesService;
+    private final BlockStateDiffService blockStateDiffService;
+    private final int maxBatchSize;
 
-    public BlockStatesController(BlockStatesService blockStatesService) {
+    public BlockStatesController(
+        BlockStatesService blockStatesService,
+        BlockStateDiffService blockStateDiffService,
+        @Value("${batch.block-states.max-keys:16}") int maxBatchSize
+    ) {
         this.blockStatesService = blockStatesService;
+        this.blockStateDiffService = blockStateDiffService;
+        this.maxBatchSize = maxBatchSize;
     }
 
     /**
      * Get the block states for a data version.
      *
+     * <p>
+     * {@code blocks} limits the response to the given block IDs. A value ending in {@code *} matches every block ID
+     * starting with the rest of it.
+     * </p>
+     *
+     * <p>
+     * Smile and CBOR are served instead of JSON if the {@code Accept} header prefers them.
+     * </p>
+     *
      * @return the block states
      */
-    @GetMapping("/{dataVersion}")
-    public BlockStates getBlockStates(
-        @PathVariable int dataVersion
+    @GetMapping(value = "/{dataVersion}", produces = {
+        MediaType.APPLICATION_JSON_VALUE, WireFormat.SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE
+    })
+    public ResponseEntity<byte[]> getBlockStates(
+        @PathVariable int dataVersion,
+        @RequestParam(required = false) @Nullable List<String> blocks,
+        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) @Nullable String accept
     ) throws IOException {
-        BlockStates states = blockStatesService.getBlockStates(dataVersion);
+        WireFormat format = WireFormat.negotiate(accept);
+        // Passed through as stored, there's no need to parse and re-serialize it
+        byte[] states;
+        if (blocks == null) {
+            states = blockStatesService.getBlockStatesEncoded(dataVersion, format);
+        } else {
+            states = blockStatesService.getBlockStatesJson(dataVersion, BlockFilter.parse(blocks, "blocks"));
+            if (states != null) {
+                states = format.transcodeJson(states);
+            }
+        }
         if (states == null) {
             throw new NotFoundException("block-states");
         }
-        return states;
+        return ResponseEntity.ok()
+            .contentType(format.mediaType())
+            .varyBy(HttpHeaders.ACCEPT)
+            .body(states);
+    }
+
+    /**
+     * Get the block states for many data versions at once.
+     *
+     * <p>
+     * Each file is written out as it is read, so only one is held at a time.
+     * </p>
+     *
+     * @return an object with each requested data version as a key, and its block states or {@code null} as the value
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<StreamingResponseBody> getBlockStatesBatch(
+        @RequestParam("dataVersion") List<Integer> dataVersions,
+        HttpServletRequest request
+    ) {
+        // Buffering the whole body to hash it would defeat streaming
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        var keys = BatchKeys.distinct(dataVersions, maxBatchSize, "dataVersion");
+        StreamingResponseBody body = output -> {
+            output.write('{');
+            boolean first = true;
+            for (int dataVersion : keys) {
+                if (!first) {
+                    output.write(',');
+                }
+                first = false;
+                output.write(('"' + String.valueOf(dataVersion) + "\":").getBytes(StandardCharsets.UTF_8));
+                byte[] states = blockStatesService.getBlockStatesJson(dataVersion);
+                output.write(states == null ? NULL : states);
+            }
+            output.write('}');
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Get the blocks that were added, removed or changed between two data versions. {@code from} may be after
+     * {@code to}.
+     *
+     * @return the diff
+     */
+    @GetMapping("/diff/{from}/{to}")
+    public ResponseEntity<byte[]> getBlockStatesDiff(
+        @PathVariable int from,
+        @PathVariable int to
+    ) throws IOException {
+        byte[] diff = blockStateDiffService.getDiffJson(from, to);
+        if (diff == null) {
+            throw new NotFoundException("block-states");
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(diff);
+    }
+
+    /**
+     * Get the state ID palette for a data version, mapping each numeric block state ID to its block and property
+     * values. See {@link org.enginehub.cassettedeck.data.downstream.StatePalette} for the format.
+     *
+     * @return the palette
+     */
+    @GetMapping("/{dataVersion}/palette")
+    public ResponseEntity<byte[]> getStatePalette(
+        @PathVariable int dataVersion
+    ) throws IOException {
+        byte[] palette = blockStatesService.getPalette(dataVersion);
+        if (palette == null) {
+            throw new NotFoundException("state-palette");
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(palette);
+    }
+
+    /**
+     * Find the data versions with a block, a property, or a property value. Given a block, the property filters
+     * apply to that block, otherwise they match any block. For example, {@code ?block=minecraft:hopper&property=facing
+     * &value=up} lists the data versions where a hopper can face up.
+     *
+     * @return the matching data versions, in ascending order
+     */
+    @GetMapping("/query/data-versions")
+    public Collection<Integer> findDataVersions(
+        @RequestParam(required = false) @Nullable String block,
+        @RequestParam(required = false) @Nullable String property,
+        @RequestParam(required = false) @Nullable String value
+    ) {
+        if (block == null && property == null) {
+            throw new InvalidParameterException("block");
+        }
+        if (value != null && property == null) {
+            throw new InvalidParameterException("property");
+        }
+        return blockStatesService.findDataVersions(block, property, value);
     }
 }
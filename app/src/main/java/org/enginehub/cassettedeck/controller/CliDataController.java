@@ -18,9 +18,14 @@
 
 package org.enginehub.cassettedeck.controller;
 
-import org.enginehub.cassettedeck.data.downstream.CliData;
+import jakarta.servlet.http.HttpServletRequest;
+import org.enginehub.cassettedeck.data.downstream.WireFormat;
 import org.enginehub.cassettedeck.exception.NotFoundException;
 import org.enginehub.cassettedeck.service.WorldEditCliDataService;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -39,30 +44,43 @@ public class CliDataController {
     /**
      * Get the WorldEdit CLI data for a data version.
      *
+     * <p>
+     * Smile and CBOR are served instead of JSON if the {@code Accept} header prefers them.
+     * </p>
+     *
      * @return the WE CLI data
      */
-    @GetMapping("/{dataVersion}/{cliDataVersion}")
-    public CliData getWeCliData(
+    @GetMapping(value = "/{dataVersion}/{cliDataVersion}", produces = {
+        MediaType.APPLICATION_JSON_VALUE, WireFormat.SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE
+    })
+    public ResponseEntity<byte[]> getWeCliData(
         @PathVariable int dataVersion,
-        @PathVariable int cliDataVersion
+        @PathVariable int cliDataVersion,
+        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) @Nullable String accept
     ) throws IOException {
-        CliData cliData = worldEditCliDataService.getCliData(dataVersion, cliDataVersion);
+        WireFormat format = WireFormat.negotiate(accept);
+        // Passed through as stored, there's no need to parse and re-serialize it
+        byte[] cliData = worldEditCliDataService.getCliDataEncoded(dataVersion, cliDataVersion, format);
         if (cliData == null) {
             throw new NotFoundException("we-cli-data");
         }
-        return cliData;
+        return ResponseEntity.ok()
+            .contentType(format.mediaType())
+            .varyBy(HttpHeaders.ACCEPT)
+            .body(cliData);
     }
 
     /**
      * Uploads a WE CLI Data file for a given data version and CLI data version.
      */
-    @PutMapping("/{dataVersion}/{cliDataVersion}")
+    @PutMapping(value = "/{dataVersion}/{cliDataVersion}", consumes = MediaType.APPLICATION_JSON_VALUE)
     @PreAuthorize("hasRole('ROLE_SERVER')")
     public void putWeCliData(
         @PathVariable int dataVersion,
         @PathVariable int cliDataVersion,
-        @RequestBody CliData cliData
+        HttpServletRequest request
     ) throws IOException {
-        worldEditCliDataService.setCliData(dataVersion, cliDataVersion, cliData);
+        // Streamed straight to storage, so large uploads don't sit in memory
+        worldEditCliDataService.setCliData(dataVersion, cliDataVersion, request.getInputStream());
     }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.enginehub.cassettedeck.service.EventFeed;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/events")
+public class EventController {
+    private final EventFeed eventFeed;
+
+    public EventController(EventFeed eventFeed) {
+        this.eventFeed = eventFeed;
+    }
+
+    /**
+     * Subscribe to newly stored data, as server-sent events.
+     *
+     * <p>
+     * {@code minecraft-version} events carry a version's info, {@code block-states} events a {@code dataVersion}, and
+     * {@code we-cli-data} events a {@code dataVersion} and {@code cliDataVersion}. The stream ends periodically, and
+     * clients should reconnect.
+     * </p>
+     *
+     * <p>
+     * Reconnecting with {@code Last-Event-ID} replays the recent events the client missed. If they are no longer
+     * kept, or the ID is from before a restart, a {@code reset} event is sent first, and clients should refetch
+     * whatever they track.
+     * </p>
+     *
+     * @param lastEventId the ID of the last event the client received, if it is reconnecting
+     * @return the event stream
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(
+        HttpServletRequest request,
+        HttpServletResponse response,
+        @RequestHeader(value = "Last-Event-ID", required = false) @Nullable String lastEventId
+    ) {
+        // Never ends on its own, so it can't be buffered to hash, or cached
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        return eventFeed.subscribe(lastEventId);
+    }
+}
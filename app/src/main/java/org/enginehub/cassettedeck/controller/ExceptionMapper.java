@@ -18,10 +18,17 @@
 
 package org.enginehub.cassettedeck.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.enginehub.cassettedeck.exception.DownloadException;
+import org.enginehub.cassettedeck.exception.InvalidBodyException;
+import org.enginehub.cassettedeck.exception.InvalidParameterException;
+import org.enginehub.cassettedeck.exception.LoadTimeoutException;
 import org.enginehub.cassettedeck.exception.NotFoundException;
+import org.enginehub.cassettedeck.exception.NotReadyException;
+import org.enginehub.cassettedeck.exception.PayloadTooLargeException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.HttpMediaTypeNotAcceptableException;
@@ -57,6 +64,15 @@ public class ExceptionMapper {
         );
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> handle(InvalidParameterException e) {
+        return Map.of(
+            "code", "bad.request",
+            "invalid-param", e.parameter()
+        );
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public Map<String, String> handle(HttpMediaTypeNotSupportedException e) {
@@ -83,12 +99,46 @@ public class ExceptionMapper {
         );
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> handle(InvalidBodyException e) {
+        return Map.of(
+            "code", "bad.request",
+            "invalid-body", e.getMessage()
+        );
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    public Map<String, Object> handle(PayloadTooLargeException e) {
+        return Map.of(
+            "code", "payload.too.large",
+            "limit", e.limit()
+        );
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public Map<String, String> handle(NotFoundException e) {
         return Map.of("code", e.type() + ".not.found");
     }
 
+    // Server problems
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handle(LoadTimeoutException e) {
+        LOGGER.warn("Timed out waiting for a shared load", e);
+        return Map.of("code", "load.timeout");
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handle(NotReadyException e, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, "10");
+        return Map.of("code", e.type() + ".not.ready");
+    }
+
     // Upstream problems
 
     @ExceptionHandler
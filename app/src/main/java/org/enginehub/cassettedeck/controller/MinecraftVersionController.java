@@ -18,36 +18,67 @@
 
 package org.enginehub.cassettedeck.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.enginehub.cassettedeck.data.downstream.Cursor;
+import org.enginehub.cassettedeck.data.downstream.VersionCursor;
+import org.enginehub.cassettedeck.data.upstream.MinecraftVersionType;
 import org.enginehub.cassettedeck.db.gen.tables.pojos.MinecraftVersionEntry;
+import org.enginehub.cassettedeck.exception.InvalidParameterException;
 import org.enginehub.cassettedeck.exception.NotFoundException;
 import org.enginehub.cassettedeck.service.MinecraftVersionService;
 import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/minecraft-versions")
 public class MinecraftVersionController {
     private final MinecraftVersionService versionService;
+    private final ObjectMapper mapper;
+    private final int maxBatchSize;
 
-    public MinecraftVersionController(MinecraftVersionService versionService) {
+    public MinecraftVersionController(
+        MinecraftVersionService versionService,
+        ObjectMapper mapper,
+        @Value("${batch.minecraft-versions.max-keys:500}") int maxBatchSize
+    ) {
         this.versionService = versionService;
+        this.mapper = mapper;
+        this.maxBatchSize = maxBatchSize;
     }
 
     /**
      * All minecraft versions, sorted by release date, newest items first.
      *
+     * <p>
+     * {@code before} takes the {@code next} value of the previous page. A release date is also accepted, for older
+     * clients.
+     * </p>
+     *
      * @return the current cursor contents
      */
     @GetMapping("/list")
-    public Cursor<MinecraftVersionEntry, Instant> listMinecraftVersions(
-        @RequestParam(required = false) @Nullable Instant before,
+    public Cursor<MinecraftVersionEntry, String> listMinecraftVersions(
+        @RequestParam(required = false) @Nullable String before,
         @RequestParam(defaultValue = "100") int limit
     ) {
-        return versionService.getAllVersions(before, limit);
+        VersionCursor after = before == null ? null : VersionCursor.parse(before, "before");
+        return versionService.getAllVersions(after, limit).mapNext(VersionCursor::encode);
     }
 
     /**
@@ -81,4 +112,139 @@ public class MinecraftVersionController {
     ) {
         return versionService.findEntryByDataVersion(dataVersion);
     }
+
+    /**
+     * Get information about many versions at once.
+     *
+     * @return an object with each requested version as a key, and its info or {@code null} as the value
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<StreamingResponseBody> getMinecraftVersions(
+        @RequestParam("version") List<String> versions,
+        HttpServletRequest request
+    ) {
+        // Buffering the whole body to hash it would defeat streaming
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        var keys = BatchKeys.distinct(versions, maxBatchSize, "version");
+        return streamJsonObject(keys, versionService::getVersion);
+    }
+
+    /**
+     * Get information about the versions for many data versions at once.
+     *
+     * @return an object with each requested data version as a key, and a list of its versions' info as the value
+     */
+    @GetMapping("/batch/find")
+    public ResponseEntity<StreamingResponseBody> findMinecraftVersionsByDataVersions(
+        @RequestParam("dataVersion") List<Integer> dataVersions,
+        HttpServletRequest request
+    ) {
+        // Buffering the whole body to hash it would defeat streaming
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        var keys = BatchKeys.distinct(dataVersions, maxBatchSize, "dataVersion");
+        return streamJsonObject(keys, versionService::findEntryByDataVersion);
+    }
+
+    /**
+     * Get information about the versions with a data version in a range, highest data version first.
+     *
+     * <p>
+     * Both bounds are inclusive, and either may be left out. {@code type} limits the results to those version types.
+     * </p>
+     *
+     * @return a list of the versions' info
+     */
+    @GetMapping("/range/data-version")
+    public ResponseEntity<StreamingResponseBody> findMinecraftVersionsByDataVersionRange(
+        @RequestParam(required = false) @Nullable Integer from,
+        @RequestParam(required = false) @Nullable Integer to,
+        @RequestParam(name = "type", required = false) @Nullable List<String> types,
+        HttpServletRequest request
+    ) {
+        int lowest = from == null ? Integer.MIN_VALUE : from;
+        int highest = to == null ? Integer.MAX_VALUE : to;
+        if (lowest > highest) {
+            throw new InvalidParameterException("to");
+        }
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        return streamJsonArray(versionService.findEntriesByDataVersionRange(lowest, highest, parseTypes(types)));
+    }
+
+    /**
+     * Get information about the versions released in a range, newest first.
+     *
+     * <p>
+     * {@code since} is inclusive and {@code until} is exclusive, and either may be left out. Both are ISO-8601
+     * instants. {@code type} limits the results to those version types.
+     * </p>
+     *
+     * @return a list of the versions' info
+     */
+    @GetMapping("/range/release-date")
+    public ResponseEntity<StreamingResponseBody> findMinecraftVersionsByReleaseDateRange(
+        @RequestParam(required = false) @Nullable String since,
+        @RequestParam(required = false) @Nullable String until,
+        @RequestParam(name = "type", required = false) @Nullable List<String> types,
+        HttpServletRequest request
+    ) {
+        Instant earliest = since == null ? Instant.MIN : parseInstant(since, "since");
+        Instant latest = until == null ? Instant.MAX : parseInstant(until, "until");
+        if (earliest.isAfter(latest)) {
+            throw new InvalidParameterException("until");
+        }
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        return streamJsonArray(versionService.findEntriesByReleaseDateRange(earliest, latest, parseTypes(types)));
+    }
+
+    private static Instant parseInstant(String value, String parameterName) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new InvalidParameterException(parameterName);
+        }
+    }
+
+    private static Set<MinecraftVersionType> parseTypes(@Nullable List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return EnumSet.allOf(MinecraftVersionType.class);
+        }
+        var types = EnumSet.noneOf(MinecraftVersionType.class);
+        for (String value : values) {
+            try {
+                types.add(MinecraftVersionType.valueOf(value.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidParameterException("type");
+            }
+        }
+        return types;
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamJsonArray(List<MinecraftVersionEntry> entries) {
+        StreamingResponseBody body = output -> {
+            try (JsonGenerator generator = mapper.createGenerator(output)) {
+                generator.writeStartArray();
+                for (MinecraftVersionEntry entry : entries) {
+                    mapper.writeValue(generator, entry);
+                }
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private <K> ResponseEntity<StreamingResponseBody> streamJsonObject(
+        Collection<K> keys, Function<K, @Nullable Object> lookup
+    ) {
+        StreamingResponseBody body = output -> {
+            try (JsonGenerator generator = mapper.createGenerator(output)) {
+                generator.writeStartObject();
+                for (K key : keys) {
+                    generator.writeFieldName(String.valueOf(key));
+                    mapper.writeValue(generator, lookup.apply(key));
+                }
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.blob;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.apache.commons.io.function.IOSupplier;
+import org.enginehub.cassettedeck.util.SingleFlight;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches serialized blobs, so popular documents are read from disk once and served as-is after that. Concurrent misses
+ * for the same key share a single load.
+ *
+ * <p>
+ * Invalidating a key bumps its generation, and a load only caches its result if the generation didn't change while it
+ * ran. Otherwise a load that read the old blob before a write could put it back after the write invalidated it.
+ * </p>
+ */
+public final class BlobCache {
+    private final Cache<String, byte[]> cache;
+    private final SingleFlight<String, byte @Nullable []> loads;
+    private final ConcurrentHashMap<String, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong allGeneration = new AtomicLong();
+
+    public BlobCache(String name, long maxBytes, Duration loadTimeout, MeterRegistry meterRegistry) {
+        this.cache = CacheBuilder.newBuilder()
+            // Weight is limited per segment, so with more than one a large blob could be evicted as soon as it's added
+            .concurrencyLevel(1)
+            .maximumWeight(maxBytes)
+            .<String, byte[]>weigher((key, value) -> value.length)
+            .recordStats()
+            .build();
+        this.loads = new SingleFlight<>(loadTimeout);
+        GuavaCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    /**
+     * Get a blob from the cache, or load it.
+     *
+     * @param key the key
+     * @param loader the loader, returning {@code null} if there is no blob
+     * @return the blob, or {@code null} if there is no blob
+     * @throws IOException if the load failed
+     */
+    public byte @Nullable [] get(String key, IOSupplier<byte @Nullable []> loader) throws IOException {
+        byte[] cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        return loads.load(key, () -> {
+            long all = allGeneration.get();
+            Long generation = generations.get(key);
+            byte[] loaded = loader.get();
+            if (loaded != null) {
+                // Holding the key's mapping keeps invalidate() from running between the check and the put
+                generations.compute(key, (k, current) -> {
+                    if (Objects.equals(current, generation)) {
+                        cache.put(key, loaded);
+                        // invalidateAll() bumps before clearing, so either it clears this or we see the bump
+                        if (allGeneration.get() != all) {
+                            cache.invalidate(key);
+                        }
+                    }
+                    return current;
+                });
+            }
+            return loaded;
+        });
+    }
+
+    public void invalidate(String key) {
+        generations.merge(key, 1L, Long::sum);
+        loads.forget(key);
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        allGeneration.incrementAndGet();
+        loads.forgetAll();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.blob;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.apache.commons.io.function.IOConsumer;
+import org.enginehub.cassettedeck.data.downstream.WireFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The on-disk encoding of stored documents.
+ *
+ * <p>
+ * Documents are written as a magic number and format version, followed by gzipped Smile. Smile back-references
+ * repeated property names and short string values, which covers most of the repetition in these documents, and gzip
+ * takes care of the rest. Anything without the magic number is read as plain JSON, which is how documents were stored
+ * before this format existed.
+ * </p>
+ */
+public final class BlobCodec {
+    /**
+     * The extension of keys holding blobs in this format, so they aren't mistaken for plain JSON.
+     */
+    public static final String EXTENSION = ".cdbc";
+
+    private static final byte[] MAGIC = {'C', 'D', 'B', 'C'};
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+
+    public BlobCodec(ObjectMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+        this.smileMapper = jsonMapper.copyWith(
+            SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build()
+        );
+    }
+
+    private static boolean isEncoded(byte[] stored) {
+        return stored.length >= HEADER_LENGTH
+            && Arrays.equals(stored, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Write a document in the current format.
+     *
+     * @param output the stream to write to, which is closed afterwards
+     * @param value the document
+     */
+    public void write(OutputStream output, Object value) throws IOException {
+        output.write(MAGIC);
+        output.write(FORMAT_VERSION);
+        try (var compressed = new GZIPOutputStream(output, 8192)) {
+            smileMapper.writeValue(compressed, value);
+        }
+    }
+
+    /**
+     * Write a document in the current format, token by token.
+     *
+     * @param output the stream to write to, which is closed afterwards
+     * @param writer writes the document to the given generator
+     */
+    public void write(OutputStream output, IOConsumer<JsonGenerator> writer) throws IOException {
+        output.write(MAGIC);
+        output.write(FORMAT_VERSION);
+        try (var compressed = new GZIPOutputStream(output, 8192);
+             JsonGenerator generator = smileMapper.getFactory().createGenerator(compressed)) {
+            writer.accept(generator);
+        }
+    }
+
+    /**
+     * Write a JSON document in the current format, without binding it to objects.
+     *
+     * @param output the stream to write to, which is closed afterwards
+     * @param json the document, as JSON, which is closed afterwards
+     */
+    public void writeJson(OutputStream output, InputStream json) throws IOException {
+        write(output, generator -> {
+            try (JsonParser parser = jsonMapper.getFactory().createParser(json)) {
+                while (parser.nextToken() != null) {
+                    generator.copyCurrentEvent(parser);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read a stored document.
+     *
+     * @param stored the stored bytes, in any format
+     * @param type the type of the document
+     * @return the document
+     */
+    public <T> T read(byte[] stored, Class<T> type) throws IOException {
+        if (!isEncoded(stored)) {
+            return jsonMapper.readValue(stored, type);
+        }
+        try (JsonParser parser = openEncoded(stored)) {
+            return smileMapper.readValue(parser, type);
+        }
+    }
+
+    /**
+     * Convert a stored document to a wire format, without binding it to objects.
+     *
+     * @param stored the stored bytes, in any format
+     * @param format the format to convert to
+     * @return the document in {@code format}
+     */
+    public byte[] transcode(byte[] stored, WireFormat format) throws IOException {
+        if (!isEncoded(stored)) {
+            return format.transcodeJson(stored);
+        }
+        var output = new ByteArrayOutputStream(stored.length * 4);
+        try (JsonParser parser = openEncoded(stored);
+             JsonGenerator generator = format.factory().createGenerator(output)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private JsonParser openEncoded(byte[] stored) throws IOException {
+        int formatVersion = stored[MAGIC.length];
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unknown blob format version " + formatVersion);
+        }
+        return smileMapper.getFactory().createParser(new GZIPInputStream(
+            new ByteArrayInputStream(stored, HEADER_LENGTH, stored.length - HEADER_LENGTH)
+        ));
+    }
+}
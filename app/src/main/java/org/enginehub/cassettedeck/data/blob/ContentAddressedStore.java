@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.blob;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import org.apache.commons.io.function.IOConsumer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * Stores blobs under the SHA-256 of their JSON form, so identical content is only stored once.
+ *
+ * <p>
+ * Blobs are written with {@link BlobCodec}, but hashed before they are encoded, so keys don't change if the encoding
+ * does. The JSON must be canonical for the hash to be stable, which Jackson's output for the same value is.
+ * </p>
+ */
+public final class ContentAddressedStore {
+    private final DiskStorage storage;
+    private final BlobCodec codec;
+    private final JsonFactory jsonFactory;
+
+    public ContentAddressedStore(DiskStorage storage, BlobCodec codec, JsonFactory jsonFactory) {
+        this.storage = storage;
+        this.codec = codec;
+        this.jsonFactory = jsonFactory;
+    }
+
+    private static String key(String hash) {
+        return "objects/" + hash.substring(0, 2) + "/" + hash.substring(2) + BlobCodec.EXTENSION;
+    }
+
+    /**
+     * Store a blob, unless one with the same content is already stored.
+     *
+     * @param json the blob, as JSON
+     * @return the hash to get the blob back with
+     */
+    public String put(byte[] json) throws IOException {
+        String hash = Hashing.sha256().hashBytes(json).toString();
+        storeIfAbsent(hash, new ByteArrayInputStream(json));
+        return hash;
+    }
+
+    /**
+     * Store a blob written token by token, unless one with the same content is already stored. The blob is hashed as
+     * it is written to a scratch file, so it is never held in memory whole.
+     *
+     * @param writer writes the blob to the given JSON generator
+     * @return the hash to get the blob back with
+     */
+    public String put(IOConsumer<JsonGenerator> writer) throws IOException {
+        return storage.useScratchFile(json -> {
+            HashCode hash;
+            try (var output = new HashingOutputStream(
+                Hashing.sha256(), new BufferedOutputStream(Files.newOutputStream(json))
+            )) {
+                try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+                    writer.accept(generator);
+                }
+                hash = output.hash();
+            }
+            // Only encoded if it's new, most content stored this way is already there
+            storeIfAbsent(hash.toString(), new BufferedInputStream(Files.newInputStream(json)));
+            return hash.toString();
+        });
+    }
+
+    private void storeIfAbsent(String hash, InputStream json) throws IOException {
+        try (json;
+             InputStream ignored = storage.storeIfAbsent(key(hash), destination -> codec.writeJson(
+                 new BufferedOutputStream(Files.newOutputStream(destination)), json
+             ))) {
+            // Only stored, not read
+        }
+    }
+    /**
+     * Get a stored blob.
+     *
+     * @param hash the hash of the blob
+     * @return the stored bytes, to be read with {@link BlobCodec}
+     * @throws IOException if there is no blob with the hash
+     */
+    public byte[] get(String hash) throws IOException {
+        try (var input = storage.retrieve(key(hash))) {
+            if (input == null) {
+                throw new IOException("Missing object " + hash);
+            }
+            return input.readAllBytes();
+        }
+    }
+}
@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.stream.Stream;
 
 public class DiskStorage {
 
@@ -139,6 +140,23 @@ public class DiskStorage {
         }
     }
 
+    /**
+     * List the keys of the blobs directly inside the storage directory, skipping subdirectories.
+     *
+     * @return the keys
+     * @throws IOException if there is an I/O error
+     */
+    public List<String> list() throws IOException {
+        try (Stream<Path> files = Files.list(storageDir)) {
+            return files
+                .filter(Files::isRegularFile)
+                .map(file -> file.getFileName().toString())
+                // In-progress stores
+                .filter(name -> !name.endsWith(".tmp"))
+                .toList();
+        }
+    }
+
     // This API is Linux-specific in design, but we don't care about Windows.
     // Specifically, we rely on atomic moves and the ability to delete open files without issue.
     public @Nullable InputStream retrieve(String key) throws IOException {
@@ -161,20 +179,54 @@ public class DiskStorage {
     public void store(String key, IOConsumer<Path> consumer) throws IOException {
         Path ourKey = ourKey(key);
         Files.createDirectories(ourKey.getParent());
+        // Written before locking, so a slow writer, like an upload streaming in, doesn't block readers in the same
+        // stripe. Only the move needs the lock.
+        Path tempFile = writeToTempFile(ourKey, consumer);
         Lock lock = locks.get(ourKey).writeLock();
         lock.lock();
         try {
-            Path tempFile = writeToTempFile(ourKey, consumer);
+            Files.move(tempFile, ourKey, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Throwable t) {
             try {
-                Files.move(tempFile, ourKey, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-            } catch (Throwable t) {
-                try {
-                    Files.delete(tempFile);
-                } catch (IOException e) {
-                    LOGGER.warn("Failed to delete temp file: {}", tempFile, e);
-                }
-                throw t;
+                Files.delete(tempFile);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete temp file: {}", tempFile, e);
             }
+            throw t;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Use a scratch file in the storage directory, for content that is only stored once it has been fully written,
+     * such as content keyed by its own hash. The file is never listed, and is deleted afterwards.
+     *
+     * @param consumer the user of the file
+     * @return the result of {@code consumer}
+     * @throws IOException if there is an I/O error
+     */
+    public <R extends @Nullable Object> R useScratchFile(IOFunction<Path, R> consumer) throws IOException {
+        Path scratchFile = Files.createTempFile(storageDir, "scratch", ".tmp");
+        try {
+            return consumer.apply(scratchFile);
+        } finally {
+            Files.deleteIfExists(scratchFile);
+        }
+    }
+
+    /**
+     * Delete the blob for the given key, if there is one.
+     *
+     * @param key the key
+     * @throws IOException if there is an I/O error
+     */
+    public void delete(String key) throws IOException {
+        Path ourKey = ourKey(key);
+        Lock lock = locks.get(ourKey).writeLock();
+        lock.lock();
+        try {
+            Files.deleteIfExists(ourKey);
         } finally {
             lock.unlock();
         }
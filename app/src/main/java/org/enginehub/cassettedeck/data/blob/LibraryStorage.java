@@ -20,6 +20,9 @@ package org.enginehub.cassettedeck.data.blob;
 
 import com.google.common.hash.Funnels;
 import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.io.function.IOFunction;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -40,7 +43,9 @@ import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 public class LibraryStorage {
@@ -49,15 +54,36 @@ public class LibraryStorage {
     private final DiskStorage libraryStorage;
     private final HttpClient httpClient;
     private final Semaphore downloadSemaphore;
+    private final MeterRegistry meterRegistry;
+    private final Timer semaphoreWait;
+    private final Counter downloadedBytes;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
 
     public LibraryStorage(
         @Qualifier("library") DiskStorage libraryStorage,
         HttpClient httpClient,
-        @Qualifier("concurrentDownloads") Semaphore downloadSemaphore
+        @Qualifier("concurrentDownloads") Semaphore downloadSemaphore,
+        MeterRegistry meterRegistry
     ) {
         this.libraryStorage = libraryStorage;
         this.httpClient = httpClient;
         this.downloadSemaphore = downloadSemaphore;
+        this.meterRegistry = meterRegistry;
+        this.semaphoreWait = Timer.builder("cassettedeck.download.permit.wait")
+            .description("Time spent waiting for a download permit")
+            .tag("purpose", "library")
+            .register(meterRegistry);
+        this.downloadedBytes = Counter.builder("cassettedeck.download.bytes")
+            .description("Bytes of verified library JARs downloaded")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.cacheHits = Counter.builder("cassettedeck.library.cache")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.cacheMisses = Counter.builder("cassettedeck.library.cache")
+            .tag("result", "miss")
+            .register(meterRegistry);
     }
 
     public <R extends @Nullable Object> R useLibraryJar(
@@ -85,17 +111,38 @@ public class LibraryStorage {
     }
 
     private void preparePath(MinecraftMetadata.Download download) throws IOException {
+        var downloaded = new AtomicBoolean();
         libraryStorage.storeIfAbsent(download.path(), destination -> {
-            downloadSemaphore.acquireUninterruptibly();
+            downloaded.set(true);
+            semaphoreWait.record(downloadSemaphore::acquireUninterruptibly);
             try {
                 performDownload(download, destination);
             } finally {
                 downloadSemaphore.release();
             }
         }).close();
+        (downloaded.get() ? cacheMisses : cacheHits).increment();
     }
 
     private void performDownload(MinecraftMetadata.Download download, Path destination) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            downloadAndVerify(download, destination);
+            outcome = "success";
+            downloadedBytes.increment(download.size());
+        } catch (DownloadException e) {
+            outcome = e.kind().name().toLowerCase(Locale.ROOT);
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("cassettedeck.download.duration")
+                .description("Time taken to download and verify a library JAR")
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+        }
+    }
+
+    private void downloadAndVerify(MinecraftMetadata.Download download, Path destination) throws IOException {
         HttpResponse<Path> response;
         try {
             response = httpClient.send(
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.downstream;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.enginehub.cassettedeck.exception.InvalidParameterException;
+
+import java.util.List;
+
+/**
+ * Selects blocks from a block state document by ID.
+ *
+ * @param ids exact block IDs to include
+ * @param prefixes block ID prefixes to include
+ */
+public record BlockFilter(
+    ImmutableSet<String> ids,
+    ImmutableList<String> prefixes
+) {
+    private static final String WILDCARD = "*";
+
+    /**
+     * Parse a filter given by a client. Each value is a block ID, or a prefix followed by {@code *}, such as
+     * {@code minecraft:oak_*}.
+     *
+     * @param values the filter values
+     * @param parameterName the request parameter the values came from, for errors
+     * @return the filter
+     * @throws InvalidParameterException if a value is empty
+     */
+    public static BlockFilter parse(List<String> values, String parameterName) {
+        var ids = ImmutableSet.<String>builder();
+        var prefixes = ImmutableList.<String>builder();
+        for (String value : values) {
+            if (value.isEmpty() || value.equals(WILDCARD)) {
+                throw new InvalidParameterException(parameterName);
+            }
+            if (value.endsWith(WILDCARD)) {
+                prefixes.add(value.substring(0, value.length() - WILDCARD.length()));
+            } else {
+                ids.add(value);
+            }
+        }
+        return new BlockFilter(ids.build(), prefixes.build());
+    }
+
+    /**
+     * {@return whether the filter includes the block}
+     */
+    public boolean matches(String id) {
+        if (ids.contains(id)) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (id.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
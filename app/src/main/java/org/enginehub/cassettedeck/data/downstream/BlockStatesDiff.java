@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.downstream;
+
+import com.google.common.collect.Sets;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The blocks that differ between the block states of two data versions.
+ *
+ * <p>
+ * Diffs compose: the diff from A to B followed by the diff from B to C is the diff from A to C.
+ * </p>
+ *
+ * @param from the data version the diff starts from
+ * @param to the data version the diff ends at
+ * @param added blocks only in {@code to}
+ * @param removed blocks only in {@code from}
+ * @param changed blocks in both, with different data
+ */
+public record BlockStatesDiff(
+    int from,
+    int to,
+    Map<String, BlockStates.BlockStateData> added,
+    Map<String, BlockStates.BlockStateData> removed,
+    Map<String, Change> changed
+) {
+    public record Change(
+        BlockStates.BlockStateData before,
+        BlockStates.BlockStateData after
+    ) {
+    }
+
+    /**
+     * The diff from a data version to itself.
+     *
+     * @param dataVersion the data version
+     * @return the empty diff
+     */
+    public static BlockStatesDiff empty(int dataVersion) {
+        return new BlockStatesDiff(dataVersion, dataVersion, Map.of(), Map.of(), Map.of());
+    }
+
+    public static BlockStatesDiff between(int from, BlockStates before, int to, BlockStates after) {
+        var builder = new Builder(from, to);
+        for (String id : Sets.union(before.blocks().keySet(), after.blocks().keySet())) {
+            builder.put(id, before.blocks().get(id), after.blocks().get(id));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Compose this diff with one that starts where this one ends.
+     *
+     * @param next the diff to apply after this one
+     * @return the diff from {@link #from()} to {@code next.to()}
+     */
+    public BlockStatesDiff then(BlockStatesDiff next) {
+        if (to != next.from) {
+            throw new IllegalArgumentException("Diff ends at " + to + " but the next one starts at " + next.from);
+        }
+        var builder = new Builder(from, next.to);
+        for (String id : Sets.union(touched(), next.touched())) {
+            builder.put(
+                id,
+                touches(id) ? before(id) : next.before(id),
+                next.touches(id) ? next.after(id) : after(id)
+            );
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reverse this diff.
+     *
+     * @return the diff from {@link #to()} to {@link #from()}
+     */
+    public BlockStatesDiff inverse() {
+        var builder = new Builder(to, from);
+        for (String id : touched()) {
+            builder.put(id, after(id), before(id));
+        }
+        return builder.build();
+    }
+
+    private Set<String> touched() {
+        return Sets.union(Sets.union(added.keySet(), removed.keySet()), changed.keySet());
+    }
+
+    private boolean touches(String id) {
+        return added.containsKey(id) || removed.containsKey(id) || changed.containsKey(id);
+    }
+
+    private BlockStates.@Nullable BlockStateData before(String id) {
+        Change change = changed.get(id);
+        return change != null ? change.before() : removed.get(id);
+    }
+
+    private BlockStates.@Nullable BlockStateData after(String id) {
+        Change change = changed.get(id);
+        return change != null ? change.after() : added.get(id);
+    }
+
+    private static final class Builder {
+        private final int from;
+        private final int to;
+        private final Map<String, BlockStates.BlockStateData> added = new TreeMap<>();
+        private final Map<String, BlockStates.BlockStateData> removed = new TreeMap<>();
+        private final Map<String, Change> changed = new TreeMap<>();
+
+        private Builder(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        private void put(
+            String id, BlockStates.@Nullable BlockStateData before, BlockStates.@Nullable BlockStateData after
+        ) {
+            if (before == null) {
+                if (after != null) {
+                    added.put(id, after);
+                }
+            } else if (after == null) {
+                removed.put(id, before);
+            } else if (!before.equals(after)) {
+                changed.put(id, new Change(before, after));
+            }
+        }
+
+        private BlockStatesDiff build() {
+            return new BlockStatesDiff(from, to, added, removed, changed);
+        }
+    }
+}
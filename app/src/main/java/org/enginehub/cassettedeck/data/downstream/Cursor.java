@@ -28,6 +28,6 @@ public record Cursor<T, N>(
     @Nullable N next
 ) {
     public <NN> Cursor<T, NN> mapNext(Function<N, NN> mapper) {
-        return new Cursor<>(items, mapper.apply(next));
+        return new Cursor<>(items, next == null ? null : mapper.apply(next));
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.downstream;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The numeric block state IDs of a data version, mapped to blocks and property values.
+ *
+ * <p>
+ * The binary form is, with every number an unsigned LEB128 varint and every string a varint byte length followed by
+ * UTF-8:
+ * </p>
+ * <pre>
+ * 4 bytes   magic "CDSP"
+ * 1 byte    format version (1)
+ * varint    block count, then for each block:
+ *   string    block ID
+ *   varint    property count, then for each property:
+ *     string    property name
+ *     varint    value count, then each value as a string
+ * varint    state count (the highest state ID + 1), then for each state ID:
+ *   varint    block index + 1, or 0 if no state has this ID
+ *   varint    the ordinal of the state's value for each property of the block, in order
+ * </pre>
+ *
+ * @param blocks the blocks, in the order states refer to them
+ * @param states the state for each ID, or {@code null} if no state has the ID
+ */
+public record StatePalette(
+    List<Block> blocks,
+    List<@Nullable State> states
+) {
+    private static final byte[] MAGIC = {'C', 'D', 'S', 'P'};
+    private static final int FORMAT_VERSION = 1;
+
+    public record Block(
+        String id,
+        List<Property> properties
+    ) {
+    }
+
+    public record Property(
+        String name,
+        List<String> values
+    ) {
+    }
+
+    /**
+     * A block state.
+     *
+     * @param block the index of the block in {@link StatePalette#blocks()}
+     * @param ordinals the index of the state's value in each property's values
+     */
+    public record State(
+        int block,
+        int[] ordinals
+    ) {
+    }
+
+    /**
+     * Write the binary form.
+     *
+     * @param output the stream to write to
+     */
+    public void write(OutputStream output) throws IOException {
+        var data = new DataOutputStream(output);
+        data.write(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        writeVarInt(data, blocks.size());
+        for (Block block : blocks) {
+            writeString(data, block.id());
+            writeVarInt(data, block.properties().size());
+            for (Property property : block.properties()) {
+                writeString(data, property.name());
+                writeVarInt(data, property.values().size());
+                for (String value : property.values()) {
+                    writeString(data, value);
+                }
+            }
+        }
+        writeVarInt(data, states.size());
+        for (State state : states) {
+            if (state == null) {
+                writeVarInt(data, 0);
+                continue;
+            }
+            writeVarInt(data, state.block() + 1);
+            for (int ordinal : state.ordinals()) {
+                writeVarInt(data, ordinal);
+            }
+        }
+        data.flush();
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(data, bytes.length);
+        data.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream data, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.downstream;
+
+import org.enginehub.cassettedeck.exception.InvalidParameterException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * A position in the version list, which is ordered by release date and then version, both descending.
+ *
+ * <p>
+ * Several versions can share a release date, so the version is needed to resume from the right place. Clients see
+ * this as an opaque string.
+ * </p>
+ *
+ * @param releaseDate the release date of the last version seen
+ * @param version the last version seen, or empty to skip every version released at {@code releaseDate}
+ */
+public record VersionCursor(
+    Instant releaseDate,
+    String version
+) {
+    private static final char SEPARATOR = ' ';
+
+    /**
+     * Parse a cursor given by a client. Plain ISO-8601 instants from older clients are also accepted, and resume
+     * after every version released at that instant.
+     *
+     * @param value the cursor string
+     * @param parameterName the request parameter the value came from, for errors
+     * @return the cursor
+     * @throws InvalidParameterException if the value isn't a valid cursor
+     */
+    public static VersionCursor parse(String value, String parameterName) {
+        try {
+            return new VersionCursor(Instant.parse(value), "");
+        } catch (DateTimeParseException ignored) {
+            // Not a legacy cursor
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            if (separator == -1) {
+                throw new InvalidParameterException(parameterName);
+            }
+            return new VersionCursor(
+                Instant.parse(decoded.substring(0, separator)),
+                decoded.substring(separator + 1)
+            );
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidParameterException(parameterName);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+            (releaseDate.toString() + SEPARATOR + version).getBytes(StandardCharsets.UTF_8)
+        );
+    }
+}
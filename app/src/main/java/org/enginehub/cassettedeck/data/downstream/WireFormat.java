@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.downstream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The encodings documents can be served in. They all share the JSON data model, so stored JSON can be transcoded
+ * token by token without binding it to objects.
+ */
+public enum WireFormat {
+    JSON(MediaType.APPLICATION_JSON, "json", new JsonFactory()),
+    SMILE(MediaType.parseMediaType(WireFormat.SMILE_VALUE), "smile", new SmileFactory()),
+    CBOR(MediaType.APPLICATION_CBOR, "cbor", new CBORFactory()),
+    ;
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+    /**
+     * Pick the format to respond with, from an {@code Accept} header. Ties on quality go to the more specific media
+     * type, then to JSON.
+     *
+     * @param accept the header value, or {@code null} if there was none
+     * @return the format
+     */
+    public static WireFormat negotiate(@Nullable String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        WireFormat best = null;
+        double bestQuality = 0;
+        boolean bestIsWildcard = true;
+        for (WireFormat format : values()) {
+            for (MediaType type : accepted) {
+                if (!type.includes(format.mediaType)) {
+                    continue;
+                }
+                double quality = type.getQualityValue();
+                boolean isWildcard = type.isWildcardType() || type.isWildcardSubtype();
+                if (quality > bestQuality || (quality == bestQuality && bestIsWildcard && !isWildcard)) {
+                    best = format;
+                    bestQuality = quality;
+                    bestIsWildcard = isWildcard;
+                }
+            }
+        }
+        return best == null ? JSON : best;
+    }
+
+    private final MediaType mediaType;
+    private final String extension;
+    private final JsonFactory factory;
+
+    WireFormat(MediaType mediaType, String extension, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+        this.factory = factory;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Get the file extension for blobs in this format.
+     *
+     * @return the extension, without the dot
+     */
+    public String extension() {
+        return extension;
+    }
+
+    public JsonFactory factory() {
+        return factory;
+    }
+
+    /**
+     * Re-encode a JSON document in this format.
+     *
+     * @param json the JSON document
+     * @return the encoded document
+     */
+    public byte[] transcodeJson(byte[] json) throws IOException {
+        if (this == JSON) {
+            return json;
+        }
+        var output = new ByteArrayOutputStream(json.length / 2);
+        try (JsonParser parser = JSON.factory.createParser(json);
+             JsonGenerator generator = factory.createGenerator(output)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.data.upstream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.enginehub.cassettedeck.db.gen.tables.pojos.MinecraftVersionEntry;
+import org.enginehub.cassettedeck.service.MinecraftVersionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads every missing version in one go, then lets the application exit. Used to provision new deployments.
+ *
+ * <p>
+ * Download and generator concurrency are controlled by the usual {@code network.concurrent-downloads} and
+ * {@code data-gen.concurrent-generators} properties. Database writes are done from the runner thread only, in
+ * batches of {@code backfill.db-batch-size}.
+ * </p>
+ */
+@Component
+@Profile(BackfillRunner.PROFILE)
+public class BackfillRunner implements ApplicationRunner, ExitCodeGenerator {
+    public static final String PROFILE = "backfill";
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private sealed interface Completion {
+    }
+
+    private record Loaded(MinecraftVersionEntry entry) implements Completion {
+    }
+
+    private record Failed(VersionManifest.Version version, Throwable cause) implements Completion {
+    }
+
+    private final MinecraftVersionPoller poller;
+    private final MinecraftVersionService minecraftVersionService;
+    private final int concurrentVersions;
+    private final int dbBatchSize;
+    private final Duration dbFlushInterval;
+    private int failures;
+
+    public BackfillRunner(
+        MinecraftVersionPoller poller,
+        MinecraftVersionService minecraftVersionService,
+        @Value("${backfill.concurrent-versions:8}") int concurrentVersions,
+        @Value("${backfill.db-batch-size:50}") int dbBatchSize,
+        @Value("${backfill.db-flush-interval:PT10S}") Duration dbFlushInterval
+    ) {
+        this.poller = poller;
+        this.minecraftVersionService = minecraftVersionService;
+        this.concurrentVersions = concurrentVersions;
+        this.dbBatchSize = dbBatchSize;
+        this.dbFlushInterval = dbFlushInterval;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        Collection<VersionManifest.Version> missing = poller.findMissingVersions();
+        int total = missing.size();
+        LOGGER.info(
+            "Backfilling {} versions ({} at a time, DB batches of {})",
+            total, concurrentVersions, dbBatchSize
+        );
+        if (total == 0) {
+            return;
+        }
+        BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(
+            concurrentVersions,
+            new ThreadFactoryBuilder().setNameFormat("backfill-%d").build()
+        );
+        try {
+            for (VersionManifest.Version next : missing) {
+                executor.execute(() -> {
+                    try {
+                        completions.add(new Loaded(poller.loadVersion(next)));
+                    } catch (Throwable t) {
+                        completions.add(new Failed(next, t));
+                    }
+                });
+            }
+            drain(completions, total);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void drain(BlockingQueue<Completion> completions, int total) throws InterruptedException {
+        List<MinecraftVersionEntry> batch = new ArrayList<>(dbBatchSize);
+        int done = 0;
+        long lastFlush = System.nanoTime();
+        while (done < total) {
+            Completion completion = completions.poll(1, TimeUnit.SECONDS);
+            if (completion != null) {
+                done++;
+                switch (completion) {
+                    case Loaded loaded -> batch.add(loaded.entry());
+                    case Failed failed -> {
+                        failures++;
+                        LOGGER.warn(() -> "[" + failed.version().id() + "] Failed to load version", failed.cause());
+                    }
+                }
+                LOGGER.info("Backfill progress: {}/{} versions processed, {} failed", done, total, failures);
+            }
+            boolean flushDue = System.nanoTime() - lastFlush >= dbFlushInterval.toNanos();
+            if (batch.size() >= dbBatchSize || done == total || (flushDue && !batch.isEmpty())) {
+                flush(batch);
+                lastFlush = System.nanoTime();
+            }
+        }
+        LOGGER.info("Backfill finished: {} versions loaded, {} failed", total - failures, failures);
+    }
+
+    private void flush(List<MinecraftVersionEntry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Inserting {} versions into the database", batch.size());
+        minecraftVersionService.insert(List.copyOf(batch));
+        batch.clear();
+    }
+
+    @Override
+    public int getExitCode() {
+        return failures == 0 ? 0 : 1;
+    }
+}
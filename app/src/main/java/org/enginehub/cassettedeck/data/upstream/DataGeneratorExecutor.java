@@ -21,10 +21,13 @@ package org.enginehub.cassettedeck.data.upstream;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.io.function.IOConsumer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.enginehub.cassettedeck.data.blob.LibraryStorage;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.util.FileSystemUtils;
 
@@ -40,12 +43,13 @@ public class DataGeneratorExecutor {
     private static final Logger LOGGER = LogManager.getLogger();
     private static final String JAVA_EXECUTABLE = ProcessHandle.current().info().command()
         .orElseThrow(() -> new IllegalStateException("Don't know the java executable for this process"));
-    private static final Semaphore GENERATOR_LOCK = new Semaphore(8);
 
     @Component
     public record Config(
         ObjectMapper mapper,
-        LibraryStorage libraryStorage
+        LibraryStorage libraryStorage,
+        @Qualifier("concurrentGenerators") Semaphore generatorLock,
+        MeterRegistry meterRegistry
     ) {
     }
 
@@ -84,22 +88,34 @@ public class DataGeneratorExecutor {
             )
                 .inheritIO();
             LOGGER.info("Running data gen: {}", processBuilder.command());
-            Process process = processBuilder.start();
+            Timer.Sample sample = Timer.start(config.meterRegistry());
+            String outcome = "error";
             try {
+                Process process = processBuilder.start();
                 int exitCode = process.waitFor();
                 if (exitCode != 0) {
                     throw new IllegalStateException("Failed to run data gen, exit code " + exitCode);
                 }
+                outcome = "success";
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw new RuntimeException(e);
+            } finally {
+                sample.stop(Timer.builder("cassettedeck.datagen.duration")
+                    .description("Time taken by the data generator process")
+                    .tag("outcome", outcome)
+                    .register(config.meterRegistry()));
             }
         });
     }
 
     public MojangBlockStates generateBlockStates() throws IOException {
+        Timer.Sample waitSample = Timer.start(config.meterRegistry());
         try {
-            GENERATOR_LOCK.acquire();
+            config.generatorLock().acquire();
+            waitSample.stop(Timer.builder("cassettedeck.datagen.wait")
+                .description("Time spent waiting for a data generator slot")
+                .register(config.meterRegistry()));
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException(e);
@@ -118,7 +134,7 @@ public class DataGeneratorExecutor {
                 FileSystemUtils.deleteRecursively(tempFolder);
             }
         } finally {
-            GENERATOR_LOCK.release();
+            config.generatorLock().release();
         }
     }
 }
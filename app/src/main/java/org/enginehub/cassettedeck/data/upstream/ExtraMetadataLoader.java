@@ -21,6 +21,8 @@ package org.enginehub.cassettedeck.data.upstream;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.io.function.IOFunction;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -61,19 +63,27 @@ public class ExtraMetadataLoader {
     private final LibraryStorage libraryStorage;
     private final DataGeneratorExecutor.Config dataGenConfig;
     private final Semaphore downloadSemaphore;
+    private final MeterRegistry meterRegistry;
+    private final Timer semaphoreWait;
 
     public ExtraMetadataLoader(
         ObjectMapper mapper,
         RestTemplate restTemplate,
         LibraryStorage libraryStorage,
         DataGeneratorExecutor.Config dataGenConfig,
-        @Qualifier("concurrentDownloads") Semaphore downloadSemaphore
+        @Qualifier("concurrentDownloads") Semaphore downloadSemaphore,
+        MeterRegistry meterRegistry
     ) {
         this.mapper = mapper;
         this.restTemplate = restTemplate;
         this.libraryStorage = libraryStorage;
         this.dataGenConfig = dataGenConfig;
         this.downloadSemaphore = downloadSemaphore;
+        this.meterRegistry = meterRegistry;
+        this.semaphoreWait = Timer.builder("cassettedeck.download.permit.wait")
+            .description("Time spent waiting for a download permit")
+            .tag("purpose", "metadata")
+            .register(meterRegistry);
     }
 
     public record Result(
@@ -90,7 +100,7 @@ public class ExtraMetadataLoader {
     }
 
     public Result load(MinecraftVersionEntry entry) throws DownloadException {
-        downloadSemaphore.acquireUninterruptibly();
+        semaphoreWait.record(downloadSemaphore::acquireUninterruptibly);
         MinecraftMetadata metadata;
         try {
             metadata = restTemplate.getForObject(entry.url(), MinecraftMetadata.class);
@@ -101,6 +111,22 @@ public class ExtraMetadataLoader {
         LOGGER.info(() -> "[" + entry.version() + "] Starting load for JAR bytes");
         boolean doDataGen = metadata.type() == MinecraftVersionType.RELEASE
             && entry.releaseDate().isAfter(DATA_GEN_AFTER);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            Result result = loadWithMetadata(entry, metadata, doDataGen);
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("cassettedeck.version.load")
+                .description("Time taken to load a version's JARs, data version and block states")
+                .tag("data-gen", String.valueOf(doDataGen))
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+        }
+    }
+
+    private Result loadWithMetadata(MinecraftVersionEntry entry, MinecraftMetadata metadata, boolean doDataGen) {
         try {
             // This is bugged right now
             //noinspection DataFlowIssue
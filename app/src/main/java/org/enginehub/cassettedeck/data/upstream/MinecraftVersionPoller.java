@@ -18,13 +18,18 @@
 
 package org.enginehub.cassettedeck.data.upstream;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.enginehub.cassettedeck.data.downstream.StatePalette;
 import org.enginehub.cassettedeck.db.gen.tables.pojos.MinecraftVersionEntry;
 import org.enginehub.cassettedeck.service.BlockStatesService;
+import org.enginehub.cassettedeck.service.MinecraftVersionInsertBatcher;
 import org.enginehub.cassettedeck.service.MinecraftVersionService;
 import org.enginehub.cassettedeck.util.BlockStateConverter;
-import org.jooq.exception.IntegrityConstraintViolationException;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -34,11 +39,13 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -50,82 +57,138 @@ public class MinecraftVersionPoller {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private final MinecraftVersionService minecraftVersionService;
+    private final MinecraftVersionInsertBatcher insertBatcher;
     private final BlockStatesService blockStatesService;
     private final RestTemplate restTemplate;
     private final ExtraMetadataLoader loader;
     private final Executor workExecutor;
+    private final Timer pollTimer;
+    private final Timer conversionTimer;
+    private final Counter versionsLoaded;
+    private final Counter versionsFailed;
+    private final AtomicInteger versionsInFlight = new AtomicInteger();
 
     public MinecraftVersionPoller(MinecraftVersionService minecraftVersionService,
+                                  MinecraftVersionInsertBatcher insertBatcher,
                                   BlockStatesService blockStatesService,
                                   RestTemplate restTemplate,
                                   ExtraMetadataLoader loader,
-                                  @Qualifier("applicationTaskExecutor") Executor workExecutor) {
+                                  @Qualifier("applicationTaskExecutor") Executor workExecutor,
+                                  MeterRegistry meterRegistry) {
         this.minecraftVersionService = minecraftVersionService;
+        this.insertBatcher = insertBatcher;
         this.blockStatesService = blockStatesService;
         this.restTemplate = restTemplate;
         this.loader = loader;
         this.workExecutor = workExecutor;
+        this.pollTimer = Timer.builder("cassettedeck.poll.duration")
+            .description("Time taken to fetch the manifest and submit missing versions")
+            .register(meterRegistry);
+        this.conversionTimer = Timer.builder("cassettedeck.blockstates.conversion")
+            .description("Time taken to convert Mojang block states to our format")
+            .register(meterRegistry);
+        this.versionsLoaded = Counter.builder("cassettedeck.poll.versions")
+            .tag("outcome", "success")
+            .register(meterRegistry);
+        this.versionsFailed = Counter.builder("cassettedeck.poll.versions")
+            .tag("outcome", "error")
+            .register(meterRegistry);
+        Gauge.builder("cassettedeck.poll.versions.in-flight", versionsInFlight, AtomicInteger::get)
+            .description("Versions submitted for loading that have not finished yet")
+            .register(meterRegistry);
     }
 
     @Scheduled(fixedDelayString = "${minecraft-version.poll.interval}")
     public void poll() {
         LOGGER.info("Polling Minecraft Version Manifest");
         try {
-            doPoll();
+            pollTimer.record(this::doPoll);
         } catch (Throwable e) {
             LOGGER.warn("Failed to poll Minecraft Version Manifest", e);
         }
     }
 
     private void doPoll() {
+        for (VersionManifest.Version next : findMissingVersions()) {
+            LOGGER.info(() -> "[" + next.id() + "] Submitting for metadata filling");
+            versionsInFlight.incrementAndGet();
+            var future = CompletableFuture.supplyAsync(() -> loadVersion(next), workExecutor)
+                .thenCompose(entry -> {
+                    LOGGER.info(() -> "[" + next.id() + "] Queueing for database insert");
+                    return insertBatcher.submit(entry);
+                });
+            future.whenComplete((__, ex) -> {
+                versionsInFlight.decrementAndGet();
+                if (ex != null) {
+                    versionsFailed.increment();
+                    LOGGER.warn(() -> "[" + next.id() + "] Failed to load version", ex);
+                } else {
+                    versionsLoaded.increment();
+                    LOGGER.info(() -> "[" + next.id() + "] Fully loaded!");
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetch the version manifest and find the versions that are not in the database yet.
+     *
+     * @return the missing versions
+     */
+    public Collection<VersionManifest.Version> findMissingVersions() {
         var manifest = restTemplate.getForObject(MINECRAFT_MANIFEST_URL, VersionManifest.class);
         Objects.requireNonNull(manifest, "manifest was null");
         if (manifest.versions().isEmpty()) {
-            return;
+            return List.of();
         }
         Map<String, VersionManifest.Version> needed = manifest.versions().stream()
             .collect(Collectors.toMap(VersionManifest.Version::id, Function.identity()));
         // Filter to only what we don't have
         needed.keySet().retainAll(minecraftVersionService.findMissingVersions(needed.keySet()));
-        for (VersionManifest.Version next : needed.values()) {
-            LOGGER.info(() -> "[" + next.id() + "] Submitting for metadata filling");
-            var future = CompletableFuture.runAsync(() -> {
-                LOGGER.info(() -> "[" + next.id() + "] Starting metadata filling");
-                var result = loader.load(new MinecraftVersionEntry(
-                    next.id(),
-                    null,
-                    next.releaseTime(),
-                    URLDecoder.decode(next.url(), StandardCharsets.UTF_8),
-                    null,
-                    next.type().jacksonName(),
-                    false
-                ));
-                if (result.fullEntry().hasDataGenInfo()) {
-                    Objects.requireNonNull(result.blockStates(), "Has Data Gen, but no block states given");
-                    LOGGER.info(() -> "[" + next.id() + "] Storing block state JSON file");
-                    try {
-                        blockStatesService.setBlockStates(
-                            result.fullEntry().dataVersion(),
-                            BlockStateConverter.convert(result.blockStates())
-                        );
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                }
-                LOGGER.info(() -> "[" + next.id() + "] Inserting into database");
+        return needed.values();
+    }
+
+    /**
+     * Load the full metadata for a version and store its block states, if it has any. The returned entry is not
+     * inserted into the database, that is left to the caller.
+     *
+     * @param next the version to load
+     * @return the full entry for the version
+     */
+    public MinecraftVersionEntry loadVersion(VersionManifest.Version next) {
+        LOGGER.info(() -> "[" + next.id() + "] Starting metadata filling");
+        var result = loader.load(new MinecraftVersionEntry(
+            next.id(),
+            null,
+            next.releaseTime(),
+            URLDecoder.decode(next.url(), StandardCharsets.UTF_8),
+            null,
+            next.type().jacksonName(),
+            false
+        ));
+        if (result.fullEntry().hasDataGenInfo()) {
+            Objects.requireNonNull(result.blockStates(), "Has Data Gen, but no block states given");
+            LOGGER.info(() -> "[" + next.id() + "] Storing block state JSON file");
+            try {
+                blockStatesService.setBlockStates(
+                    result.fullEntry().dataVersion(),
+                    conversionTimer.record(() -> BlockStateConverter.convert(result.blockStates()))
+                );
+                // The block states are stored already, so a bad palette shouldn't fail the whole version
                 try {
-                    minecraftVersionService.insert(List.of(result.fullEntry()));
-                } catch (IntegrityConstraintViolationException e) {
-                    LOGGER.warn(() -> "[" + next.id() + "] Skipping already-inserted version");
-                }
-            }, workExecutor);
-            future.whenComplete((__, ex) -> {
-                if (ex != null) {
-                    LOGGER.warn(() -> "[" + next.id() + "] Failed to load version", ex);
-                } else {
-                    LOGGER.info(() -> "[" + next.id() + "] Fully loaded!");
+                    StatePalette palette = BlockStateConverter.convertPalette(result.blockStates());
+                    if (palette != null) {
+                        blockStatesService.setPalette(result.fullEntry().dataVersion(), palette);
+                    } else {
+                        LOGGER.warn(() -> "[" + next.id() + "] Block states have no state IDs, skipping palette");
+                    }
+                } catch (IllegalStateException e) {
+                    LOGGER.warn(() -> "[" + next.id() + "] Block states have an invalid state, skipping palette", e);
                 }
-            });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
+        return result.fullEntry();
     }
 }
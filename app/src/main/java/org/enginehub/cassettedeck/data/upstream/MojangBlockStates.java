@@ -19,9 +19,11 @@
 package org.enginehub.cassettedeck.data.upstream;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,13 +34,21 @@ import java.util.Set;
 public record MojangBlockStates(
     Map<String, BlockData> mapping
 ) {
+    /**
+     * A block's properties and states.
+     *
+     * @param properties the values of each property, in the report's order, which state IDs are assigned in
+     * @param states the states
+     */
     public record BlockData(
+        @JsonDeserialize(contentAs = LinkedHashSet.class)
         @Nullable Map<String, Set<String>> properties,
         List<BlockState> states
     ) {
     }
 
     public record BlockState(
+        @Nullable Integer id,
         @Nullable Map<String, String> properties,
         @JsonProperty("default")
         @Nullable Boolean defaultState
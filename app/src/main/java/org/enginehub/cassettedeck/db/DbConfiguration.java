@@ -18,39 +18,120 @@
 
 package org.enginehub.cassettedeck.db;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.enginehub.cassettedeck.db.gen.tables.daos.AuthorizedTokenDao;
 import org.enginehub.cassettedeck.db.gen.tables.daos.MinecraftVersionDao;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 import org.jooq.impl.DefaultConfiguration;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.time.Duration;
 
+/**
+ * SQLite only allows one writer at a time, so we have a pool of read-only connections for queries, and a single
+ * writer connection. All connections use WAL mode, so reads don't wait on the writer.
+ */
 @Configuration
 public class DbConfiguration {
-    @Bean
-    public Connection connection(@Value("${database.url}") String databaseUrl) throws SQLException {
-        return DriverManager.getConnection(databaseUrl);
+    public static final String WRITER = "writer";
+
+    private final String databaseUrl;
+    private final SQLiteConfig.SynchronousMode synchronous;
+    private final long mmapSize;
+    private final int cacheSize;
+    private final Duration busyTimeout;
+
+    public DbConfiguration(
+        @Value("${database.url}") String databaseUrl,
+        @Value("${database.synchronous:NORMAL}") SQLiteConfig.SynchronousMode synchronous,
+        @Value("${database.mmap-size:0}") long mmapSize,
+        @Value("${database.cache-size:-2000}") int cacheSize,
+        @Value("${database.busy-timeout:PT10S}") Duration busyTimeout
+    ) {
+        this.databaseUrl = databaseUrl;
+        this.synchronous = synchronous;
+        this.mmapSize = mmapSize;
+        this.cacheSize = cacheSize;
+        this.busyTimeout = busyTimeout;
+    }
+
+    private HikariConfig hikariConfig(String poolName, boolean readOnly, int poolSize) {
+        var sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setReadOnly(readOnly);
+        if (!readOnly) {
+            // Persistent, but it can only be switched by a connection that may write
+            sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        }
+        sqliteConfig.setSynchronous(synchronous);
+        sqliteConfig.setCacheSize(cacheSize);
+        sqliteConfig.setBusyTimeout(Math.toIntExact(busyTimeout.toMillis()));
+        var dataSource = new SQLiteDataSource(sqliteConfig);
+        dataSource.setUrl(databaseUrl);
+
+        var config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDataSource(dataSource);
+        config.setReadOnly(readOnly);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(poolSize);
+        // SQLite connections don't go stale, there's no server to drop them
+        config.setMaxLifetime(0);
+        config.setIdleTimeout(0);
+        config.setConnectionInitSql("PRAGMA mmap_size = " + mmapSize);
+        return config;
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource writeDataSource() {
+        // Only one connection, so writes are serialized by the pool instead of failing with SQLITE_BUSY
+        return new HikariDataSource(hikariConfig("sqlite-writer", false, 1));
+    }
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    // Ensure the writer has switched the database to WAL before any readers open it
+    @DependsOn("writeDataSource")
+    public HikariDataSource readDataSource(@Value("${database.read-pool-size:8}") int readPoolSize) {
+        return new HikariDataSource(hikariConfig("sqlite-reader", true, readPoolSize));
     }
 
     @Bean
-    public org.jooq.Configuration configuration(Connection connection) {
-        return new DefaultConfiguration().set(connection).set(SQLDialect.SQLITE);
+    @Primary
+    public org.jooq.Configuration configuration(@Qualifier("readDataSource") HikariDataSource dataSource) {
+        return new DefaultConfiguration().set(dataSource).set(SQLDialect.SQLITE);
+    }
+
+    @Bean(WRITER + "Configuration")
+    public org.jooq.Configuration writerConfiguration(@Qualifier("writeDataSource") HikariDataSource dataSource) {
+        return new DefaultConfiguration().set(dataSource).set(SQLDialect.SQLITE);
     }
 
     @Bean
+    @Primary
     public DSLContext dslContext(org.jooq.Configuration configuration) {
         return DSL.using(configuration);
     }
 
+    @Bean(WRITER + "DslContext")
+    public DSLContext writerDslContext(@Qualifier(WRITER + "Configuration") org.jooq.Configuration configuration) {
+        return DSL.using(configuration);
+    }
+
     @Bean
-    public MinecraftVersionDao minecraftVersionDao(org.jooq.Configuration configuration) {
+    public MinecraftVersionDao minecraftVersionDao(
+        @Qualifier(WRITER + "Configuration") org.jooq.Configuration configuration
+    ) {
+        // Reads go through the read-only DSLContext, this is only used for writes
         return new MinecraftVersionDao(configuration);
     }
 
@@ -18,6 +18,7 @@
 
 package org.enginehub.cassettedeck.security;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -33,6 +34,7 @@ import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
 
 @Configuration
+@ConditionalOnWebApplication
 @EnableWebSecurity
 @EnableMethodSecurity
 public class CassetteDeckSecurity {
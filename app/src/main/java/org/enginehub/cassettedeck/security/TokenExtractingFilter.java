@@ -24,7 +24,7 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.enginehub.cassettedeck.db.gen.tables.daos.AuthorizedTokenDao;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -41,16 +41,17 @@ import java.util.Map;
 import java.util.Set;
 
 @Component
+@ConditionalOnWebApplication
 public class TokenExtractingFilter extends AbstractAuthenticationProcessingFilter {
-    private final AuthorizedTokenDao tokenDao;
+    private final TokenVerifier tokenVerifier;
 
     public TokenExtractingFilter(
         AuthenticationManager authenticationManager,
-        AuthorizedTokenDao tokenDao,
+        TokenVerifier tokenVerifier,
         CassetteDeckAccessDeniedHandler accessDeniedHandler
     ) {
         super(AnyRequestMatcher.INSTANCE, authenticationManager);
-        this.tokenDao = tokenDao;
+        this.tokenVerifier = tokenVerifier;
         setAuthenticationFailureHandler((request, response, exception) -> accessDeniedHandler.handle(response));
     }
 
@@ -66,9 +67,11 @@ public class TokenExtractingFilter extends AbstractAuthenticationProcessingFilte
             throw new BadCredentialsException("Not token authorization");
         }
         var tokenString = header.substring("Token ".length());
-        if (tokenDao.existsById(tokenString)) {
+        var tokenHash = tokenVerifier.verify(tokenString);
+        if (tokenHash != null) {
+            // The hash identifies the token, without keeping the token itself around
             return new AnonymousAuthenticationToken(
-                "token", tokenString, Set.of(new SimpleGrantedAuthority("ROLE_SERVER"))
+                "token", tokenHash, Set.of(new SimpleGrantedAuthority("ROLE_SERVER"))
             );
         }
         throw new BadCredentialsException("Invalid token");
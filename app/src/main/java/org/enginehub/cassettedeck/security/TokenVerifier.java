@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.enginehub.cassettedeck.db.gen.tables.daos.AuthorizedTokenDao;
+import org.enginehub.cassettedeck.db.gen.tables.pojos.AuthorizedTokenEntry;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Checks tokens against an in-memory set of token hashes, so authenticating a request doesn't hit the database.
+ *
+ * <p>
+ * The set is reloaded when it is older than {@code security.token.refresh-interval}. An unknown token also triggers
+ * a reload, in case it was just added, but no more than once per {@code security.token.min-refresh-interval}.
+ * Unknown tokens are then remembered in a bounded cache, so repeated bad tokens are rejected without a reload.
+ * </p>
+ */
+@Component
+@ConditionalOnWebApplication
+public class TokenVerifier {
+    private record Loaded(
+        ImmutableSet<HashCode> tokenHashes,
+        long loadedAt
+    ) {
+    }
+
+    private static HashCode hash(String token) {
+        return Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+    }
+
+    private final AuthorizedTokenDao tokenDao;
+    private final long refreshIntervalNanos;
+    private final long minRefreshIntervalNanos;
+    private final Cache<HashCode, Boolean> invalidTokens;
+    private final Object reloadLock = new Object();
+    private volatile Loaded loaded;
+
+    public TokenVerifier(
+        AuthorizedTokenDao tokenDao,
+        @Value("${security.token.refresh-interval:PT1M}") Duration refreshInterval,
+        @Value("${security.token.min-refresh-interval:PT5S}") Duration minRefreshInterval,
+        @Value("${security.token.invalid-cache-size:10000}") long invalidCacheSize
+    ) {
+        this.tokenDao = tokenDao;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.minRefreshIntervalNanos = minRefreshInterval.toNanos();
+        this.invalidTokens = CacheBuilder.newBuilder()
+            .maximumSize(invalidCacheSize)
+            .expireAfterWrite(refreshInterval)
+            .build();
+        this.loaded = load();
+    }
+
+    private Loaded load() {
+        var tokenHashes = ImmutableSet.<HashCode>builder();
+        for (AuthorizedTokenEntry entry : tokenDao.findAll()) {
+            tokenHashes.add(hash(entry.token()));
+        }
+        return new Loaded(tokenHashes.build(), System.nanoTime());
+    }
+
+    private Loaded reloadIfOlderThan(long maxAgeNanos) {
+        Loaded current = loaded;
+        if (System.nanoTime() - current.loadedAt() < maxAgeNanos) {
+            return current;
+        }
+        synchronized (reloadLock) {
+            current = loaded;
+            if (System.nanoTime() - current.loadedAt() < maxAgeNanos) {
+                // Someone else reloaded while we waited
+                return current;
+            }
+            Loaded fresh = load();
+            if (!fresh.tokenHashes().equals(current.tokenHashes())) {
+                invalidTokens.invalidateAll();
+            }
+            loaded = fresh;
+            return fresh;
+        }
+    }
+
+    /**
+     * Verify a token.
+     *
+     * @param token the token from the request
+     * @return the hex-encoded hash of the token, which identifies it without exposing it, or {@code null} if the
+     *     token is not authorized
+     */
+    public @Nullable String verify(String token) {
+        HashCode hash = hash(token);
+        if (reloadIfOlderThan(refreshIntervalNanos).tokenHashes().contains(hash)) {
+            return hash.toString();
+        }
+        if (invalidTokens.getIfPresent(hash) != null) {
+            return null;
+        }
+        if (reloadIfOlderThan(minRefreshIntervalNanos).tokenHashes().contains(hash)) {
+            return hash.toString();
+        }
+        invalidTokens.put(hash, Boolean.TRUE);
+        return null;
+    }
+}
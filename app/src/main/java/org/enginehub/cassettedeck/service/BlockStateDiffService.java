@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+public interface BlockStateDiffService {
+    /**
+     * Get the diff between the block states of two data versions, serialized to JSON. {@code from} may be after
+     * {@code to}.
+     *
+     * @param from the data version to diff from
+     * @param to the data version to diff to
+     * @return the JSON bytes, or {@code null} if either data version has no block states
+     */
+    byte @Nullable [] getDiffJson(int from, int to) throws IOException;
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import org.enginehub.cassettedeck.data.blob.BlobCodec;
+import org.enginehub.cassettedeck.data.blob.ContentAddressedStore;
+import org.enginehub.cassettedeck.data.downstream.BlockStates;
+import org.enginehub.cassettedeck.util.BlockStateInterner;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Content-addressed storage for the parts of block state documents.
+ *
+ * <p>
+ * Each {@link BlockStates.BlockProperty} and each {@link BlockStates.BlockStateData} is stored once under the hash of
+ * its serialized form, with block state data referring to its properties by hash. A whole document is then a
+ * manifest mapping block IDs to hashes. Consecutive data versions share almost all of their blocks, so each new
+ * version only adds the objects that changed.
+ * </p>
+ */
+final class BlockStateObjectStore {
+    /**
+     * The stored form of {@link BlockStates.BlockStateData}.
+     *
+     * @param defaultState the default state
+     * @param properties the hash of each property, by name
+     */
+    record StoredBlockStateData(
+        BlockStates.BlockState defaultState,
+        Map<String, String> properties
+    ) {
+    }
+
+    /**
+     * The blocks of one document.
+     *
+     * @param blocks the hash of each block's data, by block ID
+     */
+    record Manifest(
+        Map<String, String> blocks
+    ) {
+    }
+
+    private final ContentAddressedStore store;
+    private final BlobCodec codec;
+    private final ObjectMapper mapper;
+    // Only read while loading a data version into the registry, which holds it from then on. Consecutive data versions
+    // share most of their objects, so these only need to hold about one version's worth.
+    private final Cache<String, BlockStates.BlockStateData> blockCache;
+    private final Cache<String, BlockStates.BlockProperty> propertyCache;
+
+    BlockStateObjectStore(ContentAddressedStore store, BlobCodec codec, ObjectMapper mapper, long maxCachedObjects) {
+        this.store = store;
+        this.codec = codec;
+        this.mapper = mapper;
+        this.blockCache = CacheBuilder.newBuilder().maximumSize(maxCachedObjects).build();
+        this.propertyCache = CacheBuilder.newBuilder().maximumSize(maxCachedObjects).build();
+    }
+
+    /**
+     * Store the blocks of a document, skipping any that are already stored.
+     *
+     * @param blockStates the document
+     * @return the manifest
+     */
+    Manifest put(BlockStates blockStates) throws IOException {
+        var manifest = ImmutableMap.<String, String>builderWithExpectedSize(blockStates.blocks().size());
+        for (var entry : blockStates.blocks().entrySet()) {
+            manifest.put(entry.getKey(), putBlock(entry.getValue()));
+        }
+        return new Manifest(manifest.build());
+    }
+
+    private String putBlock(BlockStates.BlockStateData data) throws IOException {
+        var properties = ImmutableMap.<String, String>builderWithExpectedSize(data.properties().size());
+        for (var entry : data.properties().entrySet()) {
+            properties.put(entry.getKey(), putObject(entry.getValue()));
+        }
+        return putObject(new StoredBlockStateData(data.defaultState(), properties.build()));
+    }
+
+    private String putObject(Object value) throws IOException {
+        return store.put(mapper.writeValueAsBytes(value));
+    }
+
+    /**
+     * Reassemble a document from its manifest.
+     *
+     * @param manifest the manifest
+     * @return the document
+     */
+    BlockStates get(Manifest manifest) throws IOException {
+        var blocks = ImmutableMap.<String, BlockStates.BlockStateData>builderWithExpectedSize(manifest.blocks().size());
+        for (var entry : manifest.blocks().entrySet()) {
+            blocks.put(entry.getKey(), getBlock(entry.getValue()));
+        }
+        return new BlockStates(blocks.build());
+    }
+
+    private BlockStates.BlockStateData getBlock(String hash) throws IOException {
+        BlockStates.BlockStateData data = blockCache.getIfPresent(hash);
+        if (data != null) {
+            return data;
+        }
+        StoredBlockStateData stored = getObject(hash, StoredBlockStateData.class);
+        var properties = ImmutableMap.<String, BlockStates.BlockProperty>builderWithExpectedSize(
+            stored.properties().size()
+        );
+        for (var entry : stored.properties().entrySet()) {
+            properties.put(BlockStateInterner.string(entry.getKey()), getProperty(entry.getValue()));
+        }
+        data = new BlockStates.BlockStateData(
+            new BlockStates.BlockState(
+                BlockStateInterner.string(stored.defaultState().id()),
+                BlockStateInterner.stateProperties(stored.defaultState().properties())
+            ),
+            properties.build()
+        );
+        blockCache.put(hash, data);
+        return data;
+    }
+
+    private BlockStates.BlockProperty getProperty(String hash) throws IOException {
+        BlockStates.BlockProperty property = propertyCache.getIfPresent(hash);
+        if (property == null) {
+            BlockStates.BlockProperty stored = getObject(hash, BlockStates.BlockProperty.class);
+            property = BlockStateInterner.property(stored.type(), stored.values());
+            propertyCache.put(hash, property);
+        }
+        return property;
+    }
+
+    private <T> T getObject(String hash, Class<T> type) throws IOException {
+        return codec.read(store.get(hash), type);
+    }
+}
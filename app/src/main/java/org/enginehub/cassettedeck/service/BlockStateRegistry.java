@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableMap;
+import org.enginehub.cassettedeck.data.downstream.BlockFilter;
+import org.enginehub.cassettedeck.data.downstream.BlockStates;
+import org.enginehub.cassettedeck.util.BlockStateInterner;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Every known data version's block states, in a compact form that can be kept in memory all at once.
+ *
+ * <p>
+ * Block IDs, property names and values are codes into one global string dictionary. Each distinct definition of a
+ * block is a {@link Variant} made of flat {@code int} arrays, stored once however many data versions use it, with a
+ * bitset of the data versions that do. JSON rendering, of whole documents or only some blocks, and queries read
+ * the arrays directly. Typed reads build the {@link BlockStates} records on demand and don't keep them, so this is
+ * the only in-memory copy.
+ * </p>
+ *
+ * <p>
+ * An inverted index maps each block ID, property name, and property name and value pair to the bitset of data
+ * versions that have it, so cross-version questions are answered without touching any stored documents.
+ * </p>
+ */
+@Component
+public class BlockStateRegistry {
+    private static final BlockStates.BlockProperty.Type[] TYPES = BlockStates.BlockProperty.Type.values();
+
+    /**
+     * A distinct definition of a block.
+     *
+     * @param block the code of the block ID
+     * @param defaultState the default state, as pairs of property name and value codes
+     * @param properties each property as its name code, type ordinal, value count, then value codes
+     * @param dataVersions the bits of the data versions with this definition
+     */
+    private record Variant(int block, int[] defaultState, int[] properties, BitSet dataVersions) {
+    }
+
+    private record VariantKey(int block, int[] defaultState, int[] properties) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof VariantKey other
+                && block == other.block
+                && Arrays.equals(defaultState, other.defaultState)
+                && Arrays.equals(properties, other.properties);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * block + Arrays.hashCode(defaultState)) + Arrays.hashCode(properties);
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final List<Variant> variants = new ArrayList<>();
+    private final Map<VariantKey, Integer> variantIds = new HashMap<>();
+    // Variant IDs of each block, indexed by block code
+    private final List<int[]> variantsByBlock = new ArrayList<>();
+    private final Map<Integer, Integer> dataVersionBits = new HashMap<>();
+    // Variant IDs of each data version, in document order
+    private final Map<Integer, int[]> dataVersionVariants = new HashMap<>();
+    // The data version of each bit
+    private final List<Integer> bitDataVersions = new ArrayList<>();
+    private final Map<Integer, BitSet> blockIndex = new HashMap<>();
+    private final Map<Integer, BitSet> propertyIndex = new HashMap<>();
+    private final Map<Long, BitSet> propertyValueIndex = new HashMap<>();
+
+    private static long propertyValueKey(int name, int value) {
+        return ((long) name << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private int code(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = strings.size();
+            strings.add(BlockStateInterner.string(value));
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Add or replace the block states of a data version.
+     *
+     * @param dataVersion the data version
+     * @param blockStates the block states
+     */
+    public void add(int dataVersion, BlockStates blockStates) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            addLocked(dataVersion, blockStates);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Add the block states of a data version, unless it's already known. Used for block states loaded from storage,
+     * which must not replace block states that were stored while they were being loaded.
+     *
+     * @param dataVersion the data version
+     * @param blockStates the block states
+     */
+    public void addIfAbsent(int dataVersion, BlockStates blockStates) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (!dataVersionVariants.containsKey(dataVersion)) {
+                addLocked(dataVersion, blockStates);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void addLocked(int dataVersion, BlockStates blockStates) {
+        Integer existingBit = dataVersionBits.get(dataVersion);
+        int bit;
+        if (existingBit == null) {
+            bit = bitDataVersions.size();
+            bitDataVersions.add(dataVersion);
+            dataVersionBits.put(dataVersion, bit);
+        } else {
+            bit = existingBit;
+            for (int variantId : dataVersionVariants.get(dataVersion)) {
+                variants.get(variantId).dataVersions().clear(bit);
+            }
+            for (var index : List.of(blockIndex.values(), propertyIndex.values(), propertyValueIndex.values())) {
+                index.forEach(bits -> bits.clear(bit));
+            }
+        }
+        int[] ordered = new int[blockStates.blocks().size()];
+        int i = 0;
+        for (var entry : blockStates.blocks().entrySet()) {
+            int variantId = variantId(entry.getKey(), entry.getValue());
+            Variant variant = variants.get(variantId);
+            variant.dataVersions().set(bit);
+            indexVariant(variant, bit);
+            ordered[i++] = variantId;
+        }
+        dataVersionVariants.put(dataVersion, ordered);
+    }
+
+    private void indexVariant(Variant variant, int bit) {
+        blockIndex.computeIfAbsent(variant.block(), __ -> new BitSet()).set(bit);
+        int[] encoded = variant.properties();
+        for (int i = 0; i < encoded.length; ) {
+            int name = encoded[i];
+            int count = encoded[i + 2];
+            propertyIndex.computeIfAbsent(name, __ -> new BitSet()).set(bit);
+            for (int j = i + 3; j < i + 3 + count; j++) {
+                propertyValueIndex.computeIfAbsent(propertyValueKey(name, encoded[j]), __ -> new BitSet()).set(bit);
+            }
+            i += 3 + count;
+        }
+    }
+
+    private int variantId(String id, BlockStates.BlockStateData data) {
+        int block = code(id);
+        var stateProperties = data.defaultState().properties();
+        int[] defaultState = new int[stateProperties.size() * 2];
+        int i = 0;
+        for (var entry : stateProperties.entrySet()) {
+            defaultState[i++] = code(entry.getKey());
+            defaultState[i++] = code(entry.getValue());
+        }
+        int length = 0;
+        for (var property : data.properties().values()) {
+            length += 3 + property.values().size();
+        }
+        int[] properties = new int[length];
+        i = 0;
+        for (var entry : data.properties().entrySet()) {
+            properties[i++] = code(entry.getKey());
+            properties[i++] = entry.getValue().type().ordinal();
+            properties[i++] = entry.getValue().values().size();
+            for (String value : entry.getValue().values()) {
+                properties[i++] = code(value);
+            }
+        }
+        var key = new VariantKey(block, defaultState, properties);
+        Integer existing = variantIds.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int variantId = variants.size();
+        variants.add(new Variant(block, defaultState, properties, new BitSet()));
+        variantIds.put(key, variantId);
+        while (variantsByBlock.size() <= block) {
+            variantsByBlock.add(new int[0]);
+        }
+        int[] blockVariants = variantsByBlock.get(block);
+        int[] grown = Arrays.copyOf(blockVariants, blockVariants.length + 1);
+        grown[blockVariants.length] = variantId;
+        variantsByBlock.set(block, grown);
+        return variantId;
+    }
+
+    public boolean contains(int dataVersion) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return dataVersionVariants.containsKey(dataVersion);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get the block states of a data version. The records are built on each call and not kept, so callers that only
+     * need them briefly don't hold a second copy of the data.
+     *
+     * @param dataVersion the data version
+     * @return the block states, or {@code null} if the data version isn't known
+     */
+    public @Nullable BlockStates getBlockStates(int dataVersion) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            int[] ordered = dataVersionVariants.get(dataVersion);
+            if (ordered == null) {
+                return null;
+            }
+            var blocks = ImmutableMap.<String, BlockStates.BlockStateData>builderWithExpectedSize(ordered.length);
+            for (int variantId : ordered) {
+                Variant variant = variants.get(variantId);
+                blocks.put(strings.get(variant.block()), toBlockStateData(variant));
+            }
+            return new BlockStates(blocks.build());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Find the data versions matching every given criterion. With a block, the property criteria apply to that
+     * block, otherwise they match any block.
+     *
+     * @param block the block ID, or {@code null} for any
+     * @param property the property name, or {@code null} for any
+     * @param value the property value, or {@code null} for any. Requires {@code property}.
+     * @return the matching data versions, in ascending order
+     */
+    public SortedSet<Integer> findDataVersions(
+        @Nullable String block, @Nullable String property, @Nullable String value
+    ) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            BitSet matches = new BitSet();
+            matches.set(0, bitDataVersions.size());
+            if (block != null) {
+                matches.and(lookup(blockIndex, block));
+                if (property != null) {
+                    // Must be checked per variant, the property index doesn't know which block a value came from
+                    matches.and(findBlockPropertyBits(block, property, value));
+                }
+            } else if (property != null) {
+                Integer name = codes.get(property);
+                if (value == null) {
+                    matches.and(lookup(propertyIndex, property));
+                } else if (name == null || !codes.containsKey(value)) {
+                    matches.clear();
+                } else {
+                    var bits = propertyValueIndex.get(propertyValueKey(name, codes.get(value)));
+                    matches.and(bits == null ? new BitSet() : bits);
+                }
+            }
+            var dataVersions = new TreeSet<Integer>();
+            matches.stream().forEach(bit -> dataVersions.add(bitDataVersions.get(bit)));
+            return dataVersions;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private BitSet lookup(Map<Integer, BitSet> index, String key) {
+        Integer code = codes.get(key);
+        BitSet bits = code == null ? null : index.get(code);
+        return bits == null ? new BitSet() : bits;
+    }
+
+    private BitSet findBlockPropertyBits(String block, String property, @Nullable String value) {
+        BitSet bits = new BitSet();
+        Integer blockCode = codes.get(block);
+        Integer name = codes.get(property);
+        Integer valueCode = value == null ? null : codes.get(value);
+        if (blockCode == null || name == null || (value != null && valueCode == null)
+            || blockCode >= variantsByBlock.size()) {
+            return bits;
+        }
+        for (int variantId : variantsByBlock.get(blockCode)) {
+            Variant variant = variants.get(variantId);
+            int[] encoded = variant.properties();
+            for (int i = 0; i < encoded.length; i += 3 + encoded[i + 2]) {
+                if (encoded[i] != name) {
+                    continue;
+                }
+                boolean matches = valueCode == null;
+                for (int j = i + 3; !matches && j < i + 3 + encoded[i + 2]; j++) {
+                    matches = encoded[j] == valueCode;
+                }
+                if (matches) {
+                    bits.or(variant.dataVersions());
+                }
+            }
+        }
+        return bits;
+    }
+
+    private BlockStates.BlockStateData toBlockStateData(Variant variant) {
+        var stateProperties = ImmutableMap.<String, String>builderWithExpectedSize(variant.defaultState().length / 2);
+        for (int i = 0; i < variant.defaultState().length; i += 2) {
+            stateProperties.put(strings.get(variant.defaultState()[i]), strings.get(variant.defaultState()[i + 1]));
+        }
+        var properties = ImmutableMap.<String, BlockStates.BlockProperty>builder();
+        int[] encoded = variant.properties();
+        for (int i = 0; i < encoded.length; ) {
+            String name = strings.get(encoded[i++]);
+            var type = TYPES[encoded[i++]];
+            int count = encoded[i++];
+            var values = new ArrayList<String>(count);
+            for (int end = i + count; i < end; i++) {
+                values.add(strings.get(encoded[i]));
+            }
+            properties.put(name, BlockStateInterner.property(type, values));
+        }
+        return new BlockStates.BlockStateData(
+            new BlockStates.BlockState(
+                strings.get(variant.block()),
+                BlockStateInterner.stateProperties(stateProperties.build())
+            ),
+            properties.build()
+        );
+    }
+
+    /**
+     * Render the block states of a data version as JSON, in the same shape as {@link BlockStates}.
+     *
+     * @param dataVersion the data version
+     * @param factory the factory to create the generator with
+     * @return the JSON bytes, or {@code null} if the data version isn't known
+     */
+    public byte @Nullable [] renderJson(int dataVersion, JsonFactory factory) throws IOException {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            int[] ordered = dataVersionVariants.get(dataVersion);
+            if (ordered == null) {
+                return null;
+            }
+            var blocks = new ArrayList<Variant>(ordered.length);
+            for (int variantId : ordered) {
+                blocks.add(variants.get(variantId));
+            }
+            return render(blocks, factory);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Render only some blocks of a data version as JSON, in the same shape as {@link BlockStates}. Nothing is
+     * rendered for the other blocks.
+     *
+     * @param dataVersion the data version
+     * @param filter the blocks to include
+     * @param factory the factory to create the generator with
+     * @return the JSON bytes, with blocks in ID order, or {@code null} if the data version isn't known
+     */
+    public byte @Nullable [] renderJson(int dataVersion, BlockFilter filter, JsonFactory factory) throws IOException {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            int[] ordered = dataVersionVariants.get(dataVersion);
+            if (ordered == null) {
+                return null;
+            }
+            var selected = new TreeMap<String, Variant>();
+            for (int variantId : ordered) {
+                Variant variant = variants.get(variantId);
+                String id = strings.get(variant.block());
+                if (filter.matches(id)) {
+                    selected.put(id, variant);
+                }
+            }
+            return render(selected.values(), factory);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private byte[] render(Collection<Variant> blocks, JsonFactory factory) throws IOException {
+        var output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = factory.createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("blocks");
+            for (Variant variant : blocks) {
+                generator.writeFieldName(strings.get(variant.block()));
+                writeVariant(generator, variant);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    private void writeVariant(JsonGenerator generator, Variant variant) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("defaultState");
+        generator.writeStringField("id", strings.get(variant.block()));
+        generator.writeObjectFieldStart("properties");
+        int[] defaultState = variant.defaultState();
+        for (int i = 0; i < defaultState.length; i += 2) {
+            generator.writeStringField(strings.get(defaultState[i]), strings.get(defaultState[i + 1]));
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("properties");
+        int[] encoded = variant.properties();
+        for (int i = 0; i < encoded.length; ) {
+            generator.writeObjectFieldStart(strings.get(encoded[i++]));
+            generator.writeStringField("type", TYPES[encoded[i++]].jacksonName());
+            int count = encoded[i++];
+            generator.writeArrayFieldStart("values");
+            for (int end = i + count; i < end; i++) {
+                generator.writeString(strings.get(encoded[i]));
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+}
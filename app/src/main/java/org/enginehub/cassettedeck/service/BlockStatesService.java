@@ -18,13 +18,77 @@
 
 package org.enginehub.cassettedeck.service;
 
+import org.enginehub.cassettedeck.data.downstream.BlockFilter;
 import org.enginehub.cassettedeck.data.downstream.BlockStates;
+import org.enginehub.cassettedeck.data.downstream.StatePalette;
+import org.enginehub.cassettedeck.data.downstream.WireFormat;
+import org.enginehub.cassettedeck.exception.NotReadyException;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.Set;
+import java.util.SortedSet;
 
 public interface BlockStatesService {
+    /**
+     * Find every data version with stored block states.
+     *
+     * @return the data versions
+     */
+    Set<Integer> getStoredDataVersions() throws IOException;
+
+    /**
+     * Get the block states for a data version, already serialized to JSON. Prefer this when the document is only
+     * being passed on, as it skips parsing.
+     *
+     * @param dataVersion the data version
+     * @return the JSON bytes, or {@code null} if there are no block states for the data version
+     */
+    byte @Nullable [] getBlockStatesJson(int dataVersion) throws IOException;
+
+    /**
+     * Get the block states for a data version, serialized in the given format. Each encoding is made once and stored.
+     *
+     * @param dataVersion the data version
+     * @param format the format
+     * @return the encoded bytes, or {@code null} if there are no block states for the data version
+     */
+    byte @Nullable [] getBlockStatesEncoded(int dataVersion, WireFormat format) throws IOException;
+
+    /**
+     * Get the block states for only some blocks of a data version, serialized to JSON. The document has the same
+     * shape as the full one.
+     *
+     * @param dataVersion the data version
+     * @param filter the blocks to include
+     * @return the JSON bytes, or {@code null} if there are no block states for the data version
+     */
+    byte @Nullable [] getBlockStatesJson(int dataVersion, BlockFilter filter) throws IOException;
+
     @Nullable BlockStates getBlockStates(int dataVersion) throws IOException;
 
+    /**
+     * Find the data versions whose block states match every given criterion, across all stored data versions.
+     *
+     * @param block the block ID, or {@code null} for any
+     * @param property the property name, or {@code null} for any
+     * @param value the property value, or {@code null} for any. Requires {@code property}.
+     * @return the matching data versions, in ascending order
+     * @throws NotReadyException if the stored block states are still being loaded
+     * @see BlockStateRegistry#findDataVersions(String, String, String)
+     */
+    SortedSet<Integer> findDataVersions(@Nullable String block, @Nullable String property, @Nullable String value);
+
     void setBlockStates(int dataVersion, BlockStates blockStates) throws IOException;
+
+    /**
+     * Get the state ID palette for a data version, in its binary form.
+     *
+     * @param dataVersion the data version
+     * @return the palette bytes, or {@code null} if there is no palette for the data version
+     * @see StatePalette
+     */
+    byte @Nullable [] getPalette(int dataVersion) throws IOException;
+
+    void setPalette(int dataVersion, StatePalette palette) throws IOException;
 }
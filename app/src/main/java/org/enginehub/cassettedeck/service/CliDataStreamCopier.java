@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.function.IOConsumer;
+import org.enginehub.cassettedeck.exception.InvalidBodyException;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Validates a CLI data document against the shape of {@link org.enginehub.cassettedeck.data.downstream.CliData}
+ * while copying it token by token, so it never has to be held in memory. Unknown fields are dropped, like binding it
+ * would.
+ */
+final class CliDataStreamCopier {
+    private static final String BLOCKS = "blocks";
+    private static final List<String> STRING_LISTS = List.of("items", "entities", "biomes");
+    private static final List<String> TAG_MAPS = List.of("blocktags", "itemtags", "entitytags");
+    private static final List<String> FIELDS = ImmutableList.<String>builder()
+        .add(BLOCKS)
+        .addAll(STRING_LISTS)
+        .addAll(TAG_MAPS)
+        .build();
+
+    /**
+     * Receives the value of each top-level field.
+     */
+    @FunctionalInterface
+    interface SectionSink {
+        /**
+         * Accept a top-level field. {@code section} must be called exactly once, before this returns.
+         *
+         * @param name the field name
+         * @param section copies the field's value to a generator
+         */
+        void accept(String name, IOConsumer<JsonGenerator> section) throws IOException;
+    }
+
+    /**
+     * Copy a document, one top-level field at a time.
+     *
+     * @param parser the parser to read from, before the first token
+     * @param sink receives each top-level field
+     * @throws InvalidBodyException if the document isn't valid CLI data
+     */
+    static void copySections(JsonParser parser, SectionSink sink) throws IOException {
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        Set<String> seen = new HashSet<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!FIELDS.contains(name)) {
+                parser.skipChildren();
+                continue;
+            }
+            if (!seen.add(name)) {
+                throw invalid(parser, "Duplicate field " + name);
+            }
+            sink.accept(name, generator -> copyField(parser, generator, name, value));
+        }
+        if (parser.nextToken() != null) {
+            throw invalid(parser, "Trailing content after document");
+        }
+        for (String required : FIELDS) {
+            if (!seen.contains(required)) {
+                throw invalid(parser, "Missing field " + required);
+            }
+        }
+    }
+
+    private static void copyField(
+        JsonParser parser, JsonGenerator generator, String name, JsonToken value
+    ) throws IOException {
+        if (name.equals(BLOCKS)) {
+            copyBlocks(parser, generator, value);
+        } else if (STRING_LISTS.contains(name)) {
+            copyStringList(parser, generator, value);
+        } else {
+            copyTagMap(parser, generator, value);
+        }
+    }
+
+    private static void copyBlocks(JsonParser parser, JsonGenerator generator, JsonToken value) throws IOException {
+        expect(parser, value, JsonToken.START_OBJECT);
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            generator.writeFieldName(parser.currentName());
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            generator.writeStartObject();
+            boolean hasDefaultState = false;
+            boolean hasProperties = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                switch (field) {
+                    case "defaultstate" -> {
+                        expect(parser, fieldValue, JsonToken.VALUE_STRING);
+                        generator.writeFieldName(field);
+                        generator.copyCurrentEvent(parser);
+                        hasDefaultState = true;
+                    }
+                    case "properties" -> {
+                        generator.writeFieldName(field);
+                        copyProperties(parser, generator, fieldValue);
+                        hasProperties = true;
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!hasDefaultState || !hasProperties) {
+                throw invalid(parser, "Block is missing " + (hasDefaultState ? "properties" : "defaultstate"));
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void copyProperties(JsonParser parser, JsonGenerator generator, JsonToken value) throws IOException {
+        expect(parser, value, JsonToken.START_OBJECT);
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            generator.writeFieldName(parser.currentName());
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            generator.writeStartObject();
+            boolean hasValues = false;
+            boolean hasType = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                switch (field) {
+                    case "values" -> {
+                        generator.writeFieldName(field);
+                        copyStringList(parser, generator, fieldValue);
+                        hasValues = true;
+                    }
+                    case "type" -> {
+                        expect(parser, fieldValue, JsonToken.VALUE_STRING);
+                        generator.writeFieldName(field);
+                        generator.copyCurrentEvent(parser);
+                        hasType = true;
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!hasValues || !hasType) {
+                throw invalid(parser, "Property is missing " + (hasValues ? "type" : "values"));
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void copyTagMap(JsonParser parser, JsonGenerator generator, JsonToken value) throws IOException {
+        expect(parser, value, JsonToken.START_OBJECT);
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            generator.writeFieldName(parser.currentName());
+            copyStringList(parser, generator, parser.nextToken());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void copyStringList(JsonParser parser, JsonGenerator generator, JsonToken value) throws IOException {
+        expect(parser, value, JsonToken.START_ARRAY);
+        generator.writeStartArray();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            expect(parser, token, JsonToken.VALUE_STRING);
+            generator.copyCurrentEvent(parser);
+        }
+        generator.writeEndArray();
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) {
+        if (actual != expected) {
+            throw invalid(parser, "Expected " + expected + " but got " + actual);
+        }
+    }
+
+    private static InvalidBodyException invalid(JsonParser parser, String message) {
+        return new InvalidBodyException(message + " at " + parser.currentTokenLocation().offsetDescription());
+    }
+
+    private CliDataStreamCopier() {
+    }
+}
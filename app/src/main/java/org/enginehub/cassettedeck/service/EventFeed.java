@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes newly stored data to subscribers as server-sent events.
+ *
+ * <p>
+ * Subscribers are held as async requests, so an idle one costs no thread, only its emitter and connection. Each
+ * event is serialized once and queued for every subscriber. Each subscriber's queue is drained on its own virtual
+ * thread, so a subscriber that stops reading only blocks itself. Subscribers that fall too far behind, or stay stuck
+ * on one write for too long, are disconnected.
+ * </p>
+ *
+ * <p>
+ * The most recent events are kept, so a client reconnecting with {@code Last-Event-ID} is sent what it missed. Event
+ * IDs start with an ID for this run of the feed, so IDs from before a restart are never mistaken for current ones.
+ * If what a client missed can't be replayed, it is sent a {@code reset} event first.
+ * </p>
+ */
+@Component
+public class EventFeed {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long NOT_SENDING = Long.MIN_VALUE;
+
+    /**
+     * A published event, kept for replay.
+     *
+     * @param sequence the position of the event in this run of the feed
+     * @param event the serialized event
+     */
+    private record Published(long sequence, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+    }
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Guarded by itself. Publishing and subscribing hold it, so a new subscriber gets every event exactly once.
+    private final Deque<Published> recent = new ArrayDeque<>();
+    private final String feedId = Long.toString(System.currentTimeMillis(), 36);
+    // Guarded by recent
+    private long nextSequence;
+    private final ObjectMapper mapper;
+    private final ExecutorService sendExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("event-feed-", 0).factory()
+    );
+    private final long subscriberTimeoutMillis;
+    private final int maxQueuedEvents;
+    private final long writeTimeoutNanos;
+
+    public EventFeed(
+        ObjectMapper mapper,
+        MeterRegistry meterRegistry,
+        @Value("${events.subscriber-timeout:PT30M}") Duration subscriberTimeout,
+        @Value("${events.max-queued-events:32}") int maxQueuedEvents,
+        @Value("${events.write-timeout:PT30S}") Duration writeTimeout
+    ) {
+        this.mapper = mapper;
+        this.subscriberTimeoutMillis = subscriberTimeout.toMillis();
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+        Gauge.builder("cassettedeck.events.subscribers", subscribers, Set::size)
+            .description("Clients subscribed to the event feed")
+            .register(meterRegistry);
+    }
+
+    /**
+     * A subscriber and the events waiting to be sent to it.
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter = new SseEmitter(subscriberTimeoutMillis);
+        private final BlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long sendStartedAt = NOT_SENDING;
+
+        Subscriber(List<Set<ResponseBodyEmitter.DataWithMediaType>> replay) {
+            // Room for the replay on top of the usual limit, so a resuming subscriber isn't dropped straight away
+            this.queue = new ArrayBlockingQueue<>(maxQueuedEvents + replay.size());
+            queue.addAll(replay);
+        }
+
+        void offer(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            if (!queue.offer(event)) {
+                // Not reading fast enough, it would only fall further behind
+                LOGGER.debug("Disconnecting event feed subscriber that fell behind");
+                close();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        boolean isIdle() {
+            return queue.isEmpty() && !draining.get();
+        }
+
+        boolean isStuck(long now) {
+            long startedAt = sendStartedAt;
+            return startedAt != NOT_SENDING && now - startedAt > writeTimeoutNanos;
+        }
+
+        /**
+         * Stop sending to the subscriber, and end its stream so the client reconnects.
+         */
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            subscribers.remove(this);
+            queue.clear();
+            // Waits for any write in progress, so it must not run on the publishing thread. Completed normally, an
+            // error would be rendered as an error response on a stream that has already started.
+            sendExecutor.execute(emitter::complete);
+        }
+
+        void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                sendExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Set<ResponseBodyEmitter.DataWithMediaType> event;
+                while (!closed.get() && (event = queue.poll()) != null) {
+                    sendStartedAt = System.nanoTime();
+                    emitter.send(event);
+                    sendStartedAt = NOT_SENDING;
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Disconnected or already completed, the container finishes it off
+                closed.set(true);
+                subscribers.remove(this);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // Something may have been queued between the last poll and clearing the flag
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    /**
+     * Subscribe to the feed. The emitter completes after the subscriber timeout, and clients are expected to
+     * reconnect.
+     *
+     * @param lastEventId the ID of the last event the client received, or {@code null} for a new client
+     * @return the emitter for the new subscriber
+     */
+    public SseEmitter subscribe(@Nullable String lastEventId) {
+        Subscriber subscriber;
+        synchronized (recent) {
+            subscriber = new Subscriber(lastEventId == null ? List.of() : replay(lastEventId));
+            subscribers.add(subscriber);
+        }
+        SseEmitter emitter = subscriber.emitter;
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscriber.scheduleDrain();
+        return emitter;
+    }
+
+    private List<Set<ResponseBodyEmitter.DataWithMediaType>> replay(String lastEventId) {
+        long lastSequence = parseSequence(lastEventId);
+        var replay = new ArrayList<Set<ResponseBodyEmitter.DataWithMediaType>>();
+        long oldest = recent.isEmpty() ? nextSequence : recent.getFirst().sequence();
+        if (lastSequence < oldest - 1 || lastSequence >= nextSequence) {
+            // From another run, or further back than is kept
+            replay.add(SseEmitter.event().name("reset").data("{}").build());
+            return replay;
+        }
+        for (Published published : recent) {
+            if (published.sequence() > lastSequence) {
+                replay.add(published.event());
+            }
+        }
+        return replay;
+    }
+
+    private long parseSequence(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator == -1 || !eventId.substring(0, separator).equals(feedId)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @EventListener
+    public void onVersionsInserted(MinecraftVersionsInsertedEvent event) {
+        for (var entry : event.entries()) {
+            publish("minecraft-version", entry);
+        }
+    }
+
+    @EventListener
+    public void onBlockStatesStored(BlockStatesStoredEvent event) {
+        publish("block-states", event);
+    }
+
+    @EventListener
+    public void onCliDataStored(CliDataStoredEvent event) {
+        publish("we-cli-data", event);
+    }
+
+    /**
+     * Keep idle connections from being closed by proxies, find subscribers that have gone away, and disconnect those
+     * stuck on a write.
+     */
+    @Scheduled(fixedDelayString = "${events.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        long now = System.nanoTime();
+        Set<ResponseBodyEmitter.DataWithMediaType> heartbeat = null;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.isStuck(now)) {
+                LOGGER.debug("Disconnecting event feed subscriber stuck on a write");
+                subscriber.close();
+            } else if (subscriber.isIdle()) {
+                // Only idle subscribers need one, anyone else is about to get data anyway
+                if (heartbeat == null) {
+                    heartbeat = SseEmitter.event().comment("heartbeat").build();
+                }
+                subscriber.offer(heartbeat);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdownNow();
+    }
+
+    private void publish(String name, Object data) {
+        String json;
+        try {
+            json = mapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (recent) {
+            long sequence = nextSequence++;
+            var event = SseEmitter.event()
+                .id(feedId + "-" + sequence)
+                .name(name)
+                .data(json)
+                .build();
+            // As many as a subscriber may have queued, so one dropped for falling behind can still catch up
+            if (recent.size() == maxQueuedEvents) {
+                recent.removeFirst();
+            }
+            recent.addLast(new Published(sequence, event));
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+}
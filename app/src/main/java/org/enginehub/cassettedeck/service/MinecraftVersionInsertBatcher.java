@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.enginehub.cassettedeck.db.gen.tables.pojos.MinecraftVersionEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects entries from concurrent loaders and writes them with {@link MinecraftVersionService#insert(List)}, so a
+ * batch of versions costs one transaction rather than one per version.
+ *
+ * <p>
+ * A batch is written once {@code minecraft-version.insert.batch-size} entries are waiting, or every
+ * {@code minecraft-version.insert.flush-interval}, whichever comes first.
+ * </p>
+ */
+@Component
+public class MinecraftVersionInsertBatcher {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private record Pending(
+        MinecraftVersionEntry entry,
+        CompletableFuture<Void> inserted
+    ) {
+    }
+
+    private final MinecraftVersionService minecraftVersionService;
+    private final int batchSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // Single thread, so only one flush is ever running
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("version-insert-batcher").setDaemon(true).build()
+    );
+
+    public MinecraftVersionInsertBatcher(
+        MinecraftVersionService minecraftVersionService,
+        @Value("${minecraft-version.insert.batch-size:50}") int batchSize,
+        @Value("${minecraft-version.insert.flush-interval:PT2S}") Duration flushInterval
+    ) {
+        this.minecraftVersionService = minecraftVersionService;
+        this.batchSize = batchSize;
+        flusher.scheduleWithFixedDelay(
+            this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Queue an entry to be inserted.
+     *
+     * @param entry the entry
+     * @return a future completed once the entry's batch has been committed
+     */
+    public CompletableFuture<Void> submit(MinecraftVersionEntry entry) {
+        var pending = new Pending(entry, new CompletableFuture<>());
+        queue.add(pending);
+        if (queue.size() >= batchSize) {
+            flusher.execute(this::flush);
+        }
+        return pending.inserted();
+    }
+
+    private void flush() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            try {
+                minecraftVersionService.insert(batch.stream().map(Pending::entry).toList());
+                LOGGER.info("Inserted {} versions into the database", batch.size());
+                for (Pending pending : batch) {
+                    pending.inserted().complete(null);
+                }
+            } catch (Throwable t) {
+                LOGGER.warn("Failed to insert {} versions into the database", batch.size(), t);
+                for (Pending pending : batch) {
+                    pending.inserted().completeExceptionally(t);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.execute(this::flush);
+        flusher.shutdown();
+        if (!flusher.awaitTermination(30, TimeUnit.SECONDS)) {
+            LOGGER.warn("Timed out waiting for pending version inserts");
+        }
+    }
+}
@@ -19,6 +19,8 @@
 package org.enginehub.cassettedeck.service;
 
 import org.enginehub.cassettedeck.data.downstream.Cursor;
+import org.enginehub.cassettedeck.data.downstream.VersionCursor;
+import org.enginehub.cassettedeck.data.upstream.MinecraftVersionType;
 import org.enginehub.cassettedeck.db.gen.tables.pojos.MinecraftVersionEntry;
 import org.jetbrains.annotations.Nullable;
 
@@ -36,11 +38,45 @@ public interface MinecraftVersionService {
      */
     Set<String> findMissingVersions(Set<String> knownVersions);
 
-    Cursor<MinecraftVersionEntry, Instant> getAllVersions(@Nullable Instant beforeDate, int limit);
+    /**
+     * Get a page of versions, newest first.
+     *
+     * @param after the position to resume from, or {@code null} to start from the newest version
+     * @param limit the maximum number of versions to return
+     * @return the page, and the position of the next page if there may be one
+     */
+    Cursor<MinecraftVersionEntry, VersionCursor> getAllVersions(@Nullable VersionCursor after, int limit);
 
+    /**
+     * Insert the entries in a single transaction. Entries for versions that already exist are skipped.
+     *
+     * @param entries the entries to insert
+     */
     void insert(List<MinecraftVersionEntry> entries);
 
     @Nullable MinecraftVersionEntry getVersion(String version);
 
     Collection<MinecraftVersionEntry> findEntryByDataVersion(int dataVersion);
+
+    /**
+     * Find the versions with a data version in a range, highest data version first, and newest first within each.
+     *
+     * @param from the lowest data version, inclusive
+     * @param to the highest data version, inclusive
+     * @param types the version types to include
+     * @return the matching versions
+     */
+    List<MinecraftVersionEntry> findEntriesByDataVersionRange(int from, int to, Set<MinecraftVersionType> types);
+
+    /**
+     * Find the versions released in a range, newest first. Versions without a release date are never included.
+     *
+     * @param since the earliest release date, inclusive
+     * @param until the latest release date, exclusive
+     * @param types the version types to include
+     * @return the matching versions
+     */
+    List<MinecraftVersionEntry> findEntriesByReleaseDateRange(
+        Instant since, Instant until, Set<MinecraftVersionType> types
+    );
 }
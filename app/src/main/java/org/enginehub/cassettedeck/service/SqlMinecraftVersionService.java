@@ -19,90 +19,127 @@
 package org.enginehub.cassettedeck.service;
 
 import org.enginehub.cassettedeck.data.downstream.Cursor;
+import org.enginehub.cassettedeck.data.downstream.VersionCursor;
+import org.enginehub.cassettedeck.data.upstream.MinecraftVersionType;
+import org.enginehub.cassettedeck.db.DbConfiguration;
 import org.enginehub.cassettedeck.db.gen.tables.daos.MinecraftVersionDao;
 import org.enginehub.cassettedeck.db.gen.tables.pojos.MinecraftVersionEntry;
-import org.enginehub.cassettedeck.db.gen.tables.records.MinecraftVersionRecord;
 import org.jetbrains.annotations.Nullable;
-import org.jooq.Condition;
 import org.jooq.DSLContext;
-import org.jooq.Record1;
 import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.*;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.enginehub.cassettedeck.db.gen.Tables.MINECRAFT_VERSION;
 
+/**
+ * Stores versions in SQL, but answers all reads from an in-memory {@link VersionSnapshot}, which is replaced on insert.
+ */
 @Service
 public class SqlMinecraftVersionService implements MinecraftVersionService {
-    private final DSLContext dslContext;
-    private final MinecraftVersionDao dao;
+    private final DSLContext writerDslContext;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Object insertLock = new Object();
+    private volatile VersionSnapshot snapshot;
 
     public SqlMinecraftVersionService(
         DSLContext dslContext,
-        MinecraftVersionDao dao
+        @Qualifier(DbConfiguration.WRITER + "DslContext") DSLContext writerDslContext,
+        MinecraftVersionDao dao,
+        ApplicationEventPublisher eventPublisher
     ) {
-        this.dslContext = dslContext;
-        this.dao = dao;
+        this.writerDslContext = writerDslContext;
+        this.eventPublisher = eventPublisher;
+        // The only query on the read path, everything after this comes from the snapshot
+        this.snapshot = VersionSnapshot.of(dslContext.selectFrom(MINECRAFT_VERSION).fetch(dao.mapper()));
     }
 
     @Override
     public Set<String> findMissingVersions(Set<String> knownVersions) {
-        var missing = new HashSet<>(knownVersions);
-        try (org.jooq.Cursor<Record1<String>> cursor = dslContext.select(MINECRAFT_VERSION.VERSION)
-            .from(MINECRAFT_VERSION)
-            .fetchLazy()) {
-            for (Record1<String> record : cursor) {
-                missing.remove(record.value1());
+        VersionSnapshot snapshot = this.snapshot;
+        var missing = new HashSet<String>();
+        for (String version : knownVersions) {
+            if (!snapshot.contains(version)) {
+                missing.add(version);
             }
         }
         return missing;
     }
 
     @Override
-    public Cursor<MinecraftVersionEntry, Instant> getAllVersions(@Nullable Instant beforeDate, int limit) {
-        Condition condition = DSL.trueCondition();
-        if (beforeDate != null) {
-            condition = condition.and(MINECRAFT_VERSION.RELEASE_DATE.lessThan(beforeDate));
+    public Cursor<MinecraftVersionEntry, VersionCursor> getAllVersions(@Nullable VersionCursor after, int limit) {
+        return snapshot.page(after, limit);
+    }
+
+    @Override
+    public void insert(List<MinecraftVersionEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
         }
-        var results = new ArrayList<MinecraftVersionEntry>(limit);
-        Instant lastDate = null;
-        try (var cursor = dslContext.selectFrom(MINECRAFT_VERSION)
-            .where(condition)
-            .orderBy(MINECRAFT_VERSION.RELEASE_DATE.desc())
-            .limit(limit)
-            .fetchLazy()) {
-            for (var iterator = cursor.iterator(); iterator.hasNext(); ) {
-                MinecraftVersionRecord record = iterator.next();
-                results.add(dao.mapper().map(record));
-                if (!iterator.hasNext()) {
-                    lastDate = record.getReleaseDate();
+        List<MinecraftVersionEntry> inserted;
+        // Serialize inserts so that concurrent snapshot rebuilds don't lose each other's entries
+        synchronized (insertLock) {
+            writerDslContext.transaction(configuration -> {
+                var insert = DSL.using(configuration).insertInto(
+                    MINECRAFT_VERSION,
+                    MINECRAFT_VERSION.VERSION,
+                    MINECRAFT_VERSION.DATA_VERSION,
+                    MINECRAFT_VERSION.RELEASE_DATE,
+                    MINECRAFT_VERSION.URL,
+                    MINECRAFT_VERSION.CLIENT_JAR_URL,
+                    MINECRAFT_VERSION.TYPE,
+                    MINECRAFT_VERSION.HAS_DATA_GEN_INFO
+                );
+                for (MinecraftVersionEntry entry : entries) {
+                    insert = insert.values(
+                        entry.version(),
+                        entry.dataVersion(),
+                        entry.releaseDate(),
+                        entry.url(),
+                        entry.clientJarUrl(),
+                        entry.type(),
+                        entry.hasDataGenInfo()
+                    );
                 }
-            }
+                insert.onConflictDoNothing().execute();
+            });
+            VersionSnapshot previous = snapshot;
+            inserted = entries.stream().filter(entry -> !previous.contains(entry.version())).toList();
+            snapshot = previous.with(entries);
         }
-        if (results.size() < limit) {
-            // We ran out of results, there's no next page!
-            lastDate = null;
+        if (!inserted.isEmpty()) {
+            eventPublisher.publishEvent(new MinecraftVersionsInsertedEvent(inserted));
         }
-        return new Cursor<>(results, lastDate);
     }
 
     @Override
-    public void insert(List<MinecraftVersionEntry> entries) {
-        this.dao.insert(entries);
+    public @Nullable MinecraftVersionEntry getVersion(String version) {
+        return snapshot.get(version);
     }
 
     @Override
-    public MinecraftVersionEntry getVersion(String version) {
-        return this.dao.fetchOne(MINECRAFT_VERSION.VERSION, version);
+    public Collection<MinecraftVersionEntry> findEntryByDataVersion(int dataVersion) {
+        return snapshot.findByDataVersion(dataVersion);
     }
 
     @Override
-    public Collection<MinecraftVersionEntry> findEntryByDataVersion(int dataVersion) {
-        return dslContext.selectFrom(MINECRAFT_VERSION)
-            .where(MINECRAFT_VERSION.DATA_VERSION.eq(dataVersion))
-            .orderBy(MINECRAFT_VERSION.RELEASE_DATE.desc())
-            .fetch(dao.mapper());
+    public List<MinecraftVersionEntry> findEntriesByDataVersionRange(
+        int from, int to, Set<MinecraftVersionType> types
+    ) {
+        return snapshot.findByDataVersionRange(from, to, types);
+    }
+
+    @Override
+    public List<MinecraftVersionEntry> findEntriesByReleaseDateRange(
+        Instant since, Instant until, Set<MinecraftVersionType> types
+    ) {
+        return snapshot.findByReleaseDateRange(since, until, types);
     }
 }
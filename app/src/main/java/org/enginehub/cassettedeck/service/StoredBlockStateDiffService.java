@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.enginehub.cassettedeck.data.blob.BlobCache;
+import org.enginehub.cassettedeck.data.blob.DiskStorage;
+import org.enginehub.cassettedeck.data.downstream.BlockStates;
+import org.enginehub.cassettedeck.data.downstream.BlockStatesDiff;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Stores the diff between each pair of adjacent data versions with block states, and composes them for wider ranges.
+ *
+ * <p>
+ * Adjacent diffs are computed when block states are stored. Any that are missing, such as for data versions stored
+ * before diffs existed, are computed on first use.
+ * </p>
+ */
+@Service
+public class StoredBlockStateDiffService implements BlockStateDiffService {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final DiskStorage storage;
+    private final BlockStatesService blockStatesService;
+    private final ObjectMapper mapper;
+    private final BlobCache cache;
+    private final NavigableSet<Integer> storedDataVersions = new ConcurrentSkipListSet<>();
+
+    public StoredBlockStateDiffService(
+        @Qualifier("blockStateData") DiskStorage storage,
+        BlockStatesService blockStatesService,
+        ObjectMapper mapper,
+        MeterRegistry meterRegistry,
+        @Value("${blob-cache.block-state-diffs.max-bytes:8388608}") long cacheMaxBytes,
+        @Value("${blob-cache.load-timeout:PT10S}") Duration loadTimeout
+    ) throws IOException {
+        this.storage = storage;
+        this.blockStatesService = blockStatesService;
+        this.mapper = mapper;
+        this.cache = new BlobCache("block-state-diffs", cacheMaxBytes, loadTimeout, meterRegistry);
+        storedDataVersions.addAll(blockStatesService.getStoredDataVersions());
+    }
+
+    private static String diffKey(int from, int to) {
+        return "diffs/" + from + "-" + to + ".json";
+    }
+
+    @EventListener
+    public void onBlockStatesStored(BlockStatesStoredEvent event) {
+        int dataVersion = event.dataVersion();
+        if (!storedDataVersions.add(dataVersion)) {
+            // Replaced, so any composed diff may be wrong now
+            cache.invalidateAll();
+        }
+        // Failures here are not fatal, the diffs will be computed again when they're first requested
+        Integer previous = storedDataVersions.lower(dataVersion);
+        if (previous != null) {
+            storeAdjacentDiff(previous, dataVersion);
+        }
+        Integer next = storedDataVersions.higher(dataVersion);
+        if (next != null) {
+            storeAdjacentDiff(dataVersion, next);
+        }
+    }
+
+    private void storeAdjacentDiff(int from, int to) {
+        try {
+            BlockStatesDiff diff = computeDiff(from, to);
+            storage.store(diffKey(from, to), destination -> mapper.writeValue(destination.toFile(), diff));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to store block state diff from {} to {}", from, to, e);
+        }
+    }
+
+    @Override
+    public byte @Nullable [] getDiffJson(int from, int to) throws IOException {
+        if (!storedDataVersions.contains(from) || !storedDataVersions.contains(to)) {
+            return null;
+        }
+        return cache.get(from + "-" + to, () -> mapper.writeValueAsBytes(getDiff(from, to)));
+    }
+
+    private BlockStatesDiff getDiff(int from, int to) throws IOException {
+        if (from > to) {
+            return getDiff(to, from).inverse();
+        }
+        BlockStatesDiff diff = BlockStatesDiff.empty(from);
+        int current = from;
+        for (int next : storedDataVersions.subSet(from, false, to, true)) {
+            diff = diff.then(getAdjacentDiff(current, next));
+            current = next;
+        }
+        return diff;
+    }
+
+    private BlockStatesDiff getAdjacentDiff(int from, int to) throws IOException {
+        try (var input = storage.storeIfAbsent(
+            diffKey(from, to),
+            destination -> mapper.writeValue(destination.toFile(), computeDiff(from, to))
+        )) {
+            return mapper.readValue(input, BlockStatesDiff.class);
+        }
+    }
+
+    private BlockStatesDiff computeDiff(int from, int to) throws IOException {
+        BlockStates before = blockStatesService.getBlockStates(from);
+        BlockStates after = blockStatesService.getBlockStates(to);
+        if (before == null || after == null) {
+            throw new IOException("Block states missing for " + (before == null ? from : to));
+        }
+        return BlockStatesDiff.between(from, before, to, after);
+    }
+}
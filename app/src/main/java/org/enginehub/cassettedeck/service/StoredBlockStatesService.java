@@ -19,42 +19,337 @@
 package org.enginehub.cassettedeck.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.enginehub.cassettedeck.data.blob.BlobCache;
+import org.enginehub.cassettedeck.data.blob.BlobCodec;
+import org.enginehub.cassettedeck.data.blob.ContentAddressedStore;
 import org.enginehub.cassettedeck.data.blob.DiskStorage;
+import org.enginehub.cassettedeck.data.downstream.BlockFilter;
 import org.enginehub.cassettedeck.data.downstream.BlockStates;
+import org.enginehub.cassettedeck.data.downstream.StatePalette;
+import org.enginehub.cassettedeck.data.downstream.WireFormat;
+import org.enginehub.cassettedeck.exception.NotReadyException;
+import org.enginehub.cassettedeck.util.BlockStateInterner;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class StoredBlockStatesService implements BlockStatesService {
+    private static final Logger LOGGER = LogManager.getLogger();
+    // Whole documents, from before they were split into objects
+    private static final String LEGACY_SUFFIX = ".json";
+    private static final String MANIFEST_SUFFIX = ".manifest" + BlobCodec.EXTENSION;
+
     private final DiskStorage storage;
     private final ObjectMapper mapper;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BlockStateRegistry registry;
+    private final Executor preloadExecutor;
+    private final boolean preload;
+    private final Timer writeTimer;
+    private final BlobCache cache;
+    private final BlobCodec codec;
+    private final BlockStateObjectStore objects;
+    private final AtomicReference<@Nullable CompletableFuture<Void>> registryLoad = new AtomicReference<>();
 
     public StoredBlockStatesService(
         @Qualifier("blockStateData") DiskStorage storage,
-        ObjectMapper mapper
+        ObjectMapper mapper,
+        MeterRegistry meterRegistry,
+        ApplicationEventPublisher eventPublisher,
+        BlockStateRegistry registry,
+        @Qualifier("applicationTaskExecutor") Executor preloadExecutor,
+        @Value("${block-states.registry.preload:true}") boolean preload,
+        @Value("${blob-cache.block-states.max-bytes:33554432}") long cacheMaxBytes,
+        @Value("${blob-cache.block-states.max-objects:4096}") long maxCachedObjects,
+        @Value("${blob-cache.load-timeout:PT10S}") Duration loadTimeout
     ) {
         this.storage = storage;
         this.mapper = mapper;
+        this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+        this.registry = registry;
+        this.preloadExecutor = preloadExecutor;
+        this.preload = preload;
+        this.writeTimer = Timer.builder("cassettedeck.blob.write")
+            .tag("kind", "block-states")
+            .register(meterRegistry);
+        this.cache = new BlobCache("block-states", cacheMaxBytes, loadTimeout, meterRegistry);
+        this.codec = new BlobCodec(mapper);
+        this.objects = new BlockStateObjectStore(
+            new ContentAddressedStore(storage, codec, mapper.getFactory()), codec, mapper, maxCachedObjects
+        );
+    }
+
+    private static String key(int dataVersion) {
+        return dataVersion + LEGACY_SUFFIX;
+    }
+
+    private static String manifestKey(int dataVersion) {
+        return dataVersion + MANIFEST_SUFFIX;
+    }
+
+    private static String paletteKey(int dataVersion) {
+        return dataVersion + ".palette";
+    }
+
+    private static String encodedKey(int dataVersion, WireFormat format) {
+        return dataVersion + "." + format.extension();
+    }
+
+    private static String encodedCopyKey(int dataVersion, byte[] json, WireFormat format) {
+        // Named after the JSON it was encoded from, so a copy of a replaced document is never served in its place
+        return dataVersion + "." + Hashing.farmHashFingerprint64().hashBytes(json) + "." + format.extension();
+    }
+
+    private byte @Nullable [] readBlob(String key) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        byte[] blob;
+        try (var input = storage.retrieve(key)) {
+            blob = input == null ? null : input.readAllBytes();
+        } catch (IOException e) {
+            // Kept apart from misses, so failing reads don't pass for absent keys
+            sample.stop(readTimer("error"));
+            throw e;
+        }
+        sample.stop(readTimer(blob == null ? "missing" : "found"));
+        return blob;
+    }
+
+    private Timer readTimer(String result) {
+        return Timer.builder("cassettedeck.blob.read")
+            .tag("kind", "block-states")
+            .tag("result", result)
+            .register(meterRegistry);
     }
 
     @Override
-    public @Nullable BlockStates getBlockStates(int dataVersion) throws IOException {
-        try (var input = storage.retrieve(dataVersion + ".json")) {
-            if (input == null) {
+    public byte @Nullable [] getBlockStatesJson(int dataVersion) throws IOException {
+        return getBlockStatesEncoded(dataVersion, WireFormat.JSON);
+    }
+
+    @Override
+    public byte @Nullable [] getBlockStatesJson(int dataVersion, BlockFilter filter) throws IOException {
+        // Only the selected blocks are rendered, the rest of the document is never built
+        byte[] rendered = registry.renderJson(dataVersion, filter, mapper.getFactory());
+        if (rendered == null && loadIntoRegistry(dataVersion)) {
+            rendered = registry.renderJson(dataVersion, filter, mapper.getFactory());
+        }
+        return rendered;
+    }
+
+    /**
+     * Load every stored data version into the registry, so none of them are slow on first request.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadRegistry() {
+        if (preload) {
+            loadRegistry();
+        }
+    }
+
+    /**
+     * Load every stored data version into the registry, unless that is already running or done. Queries across data
+     * versions need all of them, so without the preload the first query starts this.
+     *
+     * @return the load
+     */
+    private CompletableFuture<Void> loadRegistry() {
+        var ours = new CompletableFuture<Void>();
+        CompletableFuture<Void> existing = registryLoad.compareAndExchange(null, ours);
+        if (existing != null) {
+            return existing;
+        }
+        preloadExecutor.execute(() -> {
+            Set<Integer> dataVersions;
+            try {
+                // In order, so consecutive versions share the object store's cache
+                dataVersions = new TreeSet<>(getStoredDataVersions());
+            } catch (IOException e) {
+                LOGGER.warn("Failed to list stored block states, the registry load will be retried", e);
+                registryLoad.set(null);
+                ours.completeExceptionally(e);
+                return;
+            }
+            int loaded = 0;
+            for (int dataVersion : dataVersions) {
+                try {
+                    if (!registry.contains(dataVersion) && loadIntoRegistry(dataVersion)) {
+                        loaded++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Failed to load block states for {} into the registry", dataVersion, e);
+                }
+            }
+            LOGGER.info("Loaded block states for {} data versions into the registry", loaded);
+            ours.complete(null);
+        });
+        return ours;
+    }
+
+    @Override
+    public SortedSet<Integer> findDataVersions(
+        @Nullable String block, @Nullable String property, @Nullable String value
+    ) {
+        var load = loadRegistry();
+        if (!load.isDone() || load.isCompletedExceptionally()) {
+            throw new NotReadyException("block-states.registry");
+        }
+        return registry.findDataVersions(block, property, value);
+    }
+
+    @Override
+    public Set<Integer> getStoredDataVersions() throws IOException {
+        var dataVersions = new HashSet<Integer>();
+        for (String key : storage.list()) {
+            String name;
+            if (key.endsWith(MANIFEST_SUFFIX)) {
+                name = key.substring(0, key.length() - MANIFEST_SUFFIX.length());
+            } else if (key.endsWith(LEGACY_SUFFIX)) {
+                name = key.substring(0, key.length() - LEGACY_SUFFIX.length());
+            } else {
+                continue;
+            }
+            try {
+                dataVersions.add(Integer.parseInt(name));
+            } catch (NumberFormatException ignored) {
+                // Not block states
+            }
+        }
+        return dataVersions;
+    }
+
+    @Override
+    public byte @Nullable [] getBlockStatesEncoded(int dataVersion, WireFormat format) throws IOException {
+        String key = encodedKey(dataVersion, format);
+        return cache.get(key, () -> {
+            if (format == WireFormat.JSON) {
+                byte[] rendered = registry.renderJson(dataVersion, mapper.getFactory());
+                if (rendered == null && loadIntoRegistry(dataVersion)) {
+                    rendered = registry.renderJson(dataVersion, mapper.getFactory());
+                }
+                return rendered;
+            }
+            byte[] json = getBlockStatesJson(dataVersion);
+            if (json == null) {
                 return null;
             }
-            return mapper.readValue(input, BlockStates.class);
+            // Encoded once, then kept next to the manifest
+            try (var input = storage.storeIfAbsent(
+                encodedCopyKey(dataVersion, json, format),
+                destination -> Files.write(destination, format.transcodeJson(json))
+            )) {
+                return input.readAllBytes();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable BlockStates getBlockStates(int dataVersion) throws IOException {
+        BlockStates blockStates = registry.getBlockStates(dataVersion);
+        if (blockStates == null && loadIntoRegistry(dataVersion)) {
+            blockStates = registry.getBlockStates(dataVersion);
         }
+        return blockStates;
+    }
+
+    /**
+     * Load a stored data version into the registry. The loaded records are dropped afterwards, the registry's copy is
+     * the one kept in memory.
+     *
+     * @return {@code true} if the data version is stored
+     */
+    private boolean loadIntoRegistry(int dataVersion) throws IOException {
+        BlockStates stored = readStoredBlockStates(dataVersion);
+        if (stored == null) {
+            return false;
+        }
+        registry.addIfAbsent(dataVersion, stored);
+        return true;
+    }
+
+    private @Nullable BlockStates readStoredBlockStates(int dataVersion) throws IOException {
+        byte[] manifest = readBlob(manifestKey(dataVersion));
+        if (manifest != null) {
+            return objects.get(codec.read(manifest, BlockStateObjectStore.Manifest.class));
+        }
+        byte[] legacy = readBlob(key(dataVersion));
+        if (legacy != null) {
+            return BlockStateInterner.intern(codec.read(legacy, BlockStates.class));
+        }
+        return null;
     }
 
     @Override
     public void setBlockStates(int dataVersion, BlockStates blockStates) throws IOException {
-        storage.store(
-            dataVersion + ".json",
-            destination -> mapper.writeValue(destination.toFile(), blockStates)
-        );
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            var manifest = objects.put(blockStates);
+            storage.store(
+                manifestKey(dataVersion),
+                destination -> codec.write(new BufferedOutputStream(Files.newOutputStream(destination)), manifest)
+            );
+        } finally {
+            sample.stop(writeTimer);
+        }
+        registry.add(dataVersion, blockStates);
+        // The manifest takes over from any whole document
+        storage.delete(key(dataVersion));
+        deleteEncodedCopies(dataVersion + ".");
+        for (WireFormat format : WireFormat.values()) {
+            cache.invalidate(encodedKey(dataVersion, format));
+        }
+        eventPublisher.publishEvent(new BlockStatesStoredEvent(dataVersion));
+    }
+
+    private void deleteEncodedCopies(String prefix) throws IOException {
+        // A load that read the old document can still store its copy after this, but under the old document's hash,
+        // which nothing looks up any more. The next replace cleans it up.
+        for (String key : storage.list()) {
+            for (WireFormat format : WireFormat.values()) {
+                if (format != WireFormat.JSON && key.startsWith(prefix) && key.endsWith("." + format.extension())) {
+                    storage.delete(key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public byte @Nullable [] getPalette(int dataVersion) throws IOException {
+        String key = paletteKey(dataVersion);
+        return cache.get(key, () -> readBlob(key));
+    }
+
+    @Override
+    public void setPalette(int dataVersion, StatePalette palette) throws IOException {
+        String key = paletteKey(dataVersion);
+        storage.store(key, destination -> {
+            try (var output = new BufferedOutputStream(Files.newOutputStream(destination))) {
+                palette.write(output);
+            }
+        });
+        cache.invalidate(key);
     }
 }
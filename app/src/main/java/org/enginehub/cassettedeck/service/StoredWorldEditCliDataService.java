@@ -18,43 +18,243 @@
 
 package org.enginehub.cassettedeck.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.exc.StreamReadException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.enginehub.cassettedeck.data.blob.BlobCache;
+import org.enginehub.cassettedeck.data.blob.BlobCodec;
+import org.enginehub.cassettedeck.data.blob.ContentAddressedStore;
 import org.enginehub.cassettedeck.data.blob.DiskStorage;
 import org.enginehub.cassettedeck.data.downstream.CliData;
+import org.enginehub.cassettedeck.data.downstream.WireFormat;
+import org.enginehub.cassettedeck.exception.InvalidBodyException;
+import org.enginehub.cassettedeck.util.SizeLimitedInputStream;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 
+/**
+ * Stores CLI data as content-addressed sections.
+ *
+ * <p>
+ * Each top-level field of a document is stored once under the hash of its JSON form, and a document is a manifest
+ * mapping field names to hashes. Most fields don't change between uploads, so re-uploading only stores the sections
+ * that did. Documents stored before sections existed are kept whole at their old key, and still readable.
+ * </p>
+ */
 @Service
 public class StoredWorldEditCliDataService implements WorldEditCliDataService {
+    /**
+     * The sections of one document.
+     *
+     * @param sections the hash of each section, by field name, in document order
+     */
+    record Manifest(
+        Map<String, String> sections
+    ) {
+    }
+
     private final DiskStorage storage;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer writeTimer;
+    private final BlobCache cache;
+    private final BlobCodec codec;
+    private final ContentAddressedStore sectionStore;
     private final ObjectMapper mapper;
+    private final long maxUploadBytes;
 
     public StoredWorldEditCliDataService(
         @Qualifier("worldEditCliData") DiskStorage storage,
-        ObjectMapper mapper
+        ObjectMapper mapper,
+        MeterRegistry meterRegistry,
+        ApplicationEventPublisher eventPublisher,
+        @Value("${blob-cache.we-cli-data.max-bytes:33554432}") long cacheMaxBytes,
+        @Value("${blob-cache.load-timeout:PT10S}") Duration loadTimeout,
+        @Value("${we-cli-data.max-upload-bytes:67108864}") long maxUploadBytes
     ) {
         this.storage = storage;
+        this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+        this.writeTimer = Timer.builder("cassettedeck.blob.write")
+            .tag("kind", "we-cli-data")
+            .register(meterRegistry);
+        this.cache = new BlobCache("we-cli-data", cacheMaxBytes, loadTimeout, meterRegistry);
+        this.codec = new BlobCodec(mapper);
+        this.sectionStore = new ContentAddressedStore(storage, codec, mapper.getFactory());
         this.mapper = mapper;
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    private static String key(int dataVersion, int cliDataVersion) {
+        return dataVersion + "-" + cliDataVersion + ".json";
+    }
+
+    private static String manifestKey(int dataVersion, int cliDataVersion) {
+        return dataVersion + "-" + cliDataVersion + ".manifest" + BlobCodec.EXTENSION;
+    }
+
+    private static String encodedKey(int dataVersion, int cliDataVersion, WireFormat format) {
+        // JSON is assembled from the sections and only cached, never stored, so it borrows the legacy document's key
+        return format == WireFormat.JSON
+            ? key(dataVersion, cliDataVersion)
+            : dataVersion + "-" + cliDataVersion + "." + format.extension();
+    }
+
+    private static String encodedCopyKey(int dataVersion, int cliDataVersion, byte[] json, WireFormat format) {
+        // Named after the JSON it was encoded from, so a copy of a replaced document is never served in its place
+        return dataVersion + "-" + cliDataVersion + "." + Hashing.farmHashFingerprint64().hashBytes(json)
+            + "." + format.extension();
+    }
+
+    private byte @Nullable [] readBlob(String key) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        byte[] blob;
+        try (var input = storage.retrieve(key)) {
+            blob = input == null ? null : input.readAllBytes();
+        } catch (IOException e) {
+            // Kept apart from misses, so failing reads don't pass for absent keys
+            sample.stop(readTimer("error"));
+            throw e;
+        }
+        sample.stop(readTimer(blob == null ? "missing" : "found"));
+        return blob;
+    }
+
+    private Timer readTimer(String result) {
+        return Timer.builder("cassettedeck.blob.read")
+            .tag("kind", "we-cli-data")
+            .tag("result", result)
+            .register(meterRegistry);
     }
 
     @Override
-    public @Nullable CliData getCliData(int dataVersion, int cliDataVersion) throws IOException {
-        try (var input = storage.retrieve(dataVersion + "-" + cliDataVersion + ".json")) {
-            if (input == null) {
+    public byte @Nullable [] getCliDataJson(int dataVersion, int cliDataVersion) throws IOException {
+        return getCliDataEncoded(dataVersion, cliDataVersion, WireFormat.JSON);
+    }
+
+    @Override
+    public byte @Nullable [] getCliDataEncoded(int dataVersion, int cliDataVersion, WireFormat format) throws IOException {
+        String key = encodedKey(dataVersion, cliDataVersion, format);
+        if (format == WireFormat.JSON) {
+            return cache.get(key, () -> assembleJson(dataVersion, cliDataVersion));
+        }
+        return cache.get(key, () -> {
+            byte[] json = getCliDataJson(dataVersion, cliDataVersion);
+            if (json == null) {
                 return null;
             }
-            return mapper.readValue(input, CliData.class);
+            // Encoded once, then kept next to the stored document
+            try (var input = storage.storeIfAbsent(
+                encodedCopyKey(dataVersion, cliDataVersion, json, format),
+                destination -> Files.write(destination, format.transcodeJson(json))
+            )) {
+                return input.readAllBytes();
+            }
+        });
+    }
+
+    private byte @Nullable [] assembleJson(int dataVersion, int cliDataVersion) throws IOException {
+        byte[] storedManifest = readBlob(manifestKey(dataVersion, cliDataVersion));
+        if (storedManifest == null) {
+            byte[] legacy = readBlob(key(dataVersion, cliDataVersion));
+            return legacy == null ? null : codec.transcode(legacy, WireFormat.JSON);
+        }
+        Manifest manifest = codec.read(storedManifest, Manifest.class);
+        // Field names come from a fixed set, and the sections are already JSON, so they can be joined as-is
+        var output = new ByteArrayOutputStream();
+        output.write('{');
+        boolean first = true;
+        for (var entry : manifest.sections().entrySet()) {
+            if (!first) {
+                output.write(',');
+            }
+            first = false;
+            output.write(('"' + entry.getKey() + "\":").getBytes(StandardCharsets.UTF_8));
+            output.write(getSectionJson(entry.getValue()));
+        }
+        output.write('}');
+        return output.toByteArray();
+    }
+
+    private byte[] getSectionJson(String hash) throws IOException {
+        // Sections never change, so they're cached by hash and never invalidated
+        return Objects.requireNonNull(cache.get("sections/" + hash, () -> codec.transcode(
+            sectionStore.get(hash), WireFormat.JSON
+        )));
+    }
+
+    @Override
+    public @Nullable CliData getCliData(int dataVersion, int cliDataVersion) throws IOException {
+        byte[] json = getCliDataJson(dataVersion, cliDataVersion);
+        if (json == null) {
+            return null;
         }
+        return mapper.readValue(json, CliData.class);
     }
 
     @Override
     public void setCliData(int dataVersion, int cliDataVersion, CliData cliData) throws IOException {
-        storage.store(
-            dataVersion + "-" + cliDataVersion + ".json",
-            destination -> mapper.writeValue(destination.toFile(), cliData)
-        );
+        setCliData(dataVersion, cliDataVersion, new ByteArrayInputStream(mapper.writeValueAsBytes(cliData)));
+    }
+
+    @Override
+    public void setCliData(int dataVersion, int cliDataVersion, InputStream json) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            var sections = new LinkedHashMap<String, String>();
+            try (JsonParser parser = mapper.getFactory().createParser(new SizeLimitedInputStream(json, maxUploadBytes))) {
+                // Each section is streamed to disk as it's read, so even the largest is never held in memory
+                CliDataStreamCopier.copySections(
+                    parser, (name, section) -> sections.put(name, sectionStore.put(section))
+                );
+            } catch (StreamReadException e) {
+                throw new InvalidBodyException("Malformed JSON", e);
+            }
+            var manifest = new Manifest(sections);
+            storage.store(
+                manifestKey(dataVersion, cliDataVersion),
+                destination -> codec.write(new BufferedOutputStream(Files.newOutputStream(destination)), manifest)
+            );
+        } finally {
+            sample.stop(writeTimer);
+        }
+        // Replaced by the manifest
+        storage.delete(key(dataVersion, cliDataVersion));
+        invalidate(dataVersion, cliDataVersion);
+        eventPublisher.publishEvent(new CliDataStoredEvent(dataVersion, cliDataVersion));
+    }
+
+    private void invalidate(int dataVersion, int cliDataVersion) throws IOException {
+        // A load that read the old document can still store its copy after this, but under the old document's hash,
+        // which nothing looks up any more. The next replace cleans it up.
+        String prefix = dataVersion + "-" + cliDataVersion + ".";
+        for (String key : storage.list()) {
+            for (WireFormat format : WireFormat.values()) {
+                if (format != WireFormat.JSON && key.startsWith(prefix) && key.endsWith("." + format.extension())) {
+                    storage.delete(key);
+                }
+            }
+        }
+        for (WireFormat format : WireFormat.values()) {
+            cache.invalidate(encodedKey(dataVersion, cliDataVersion, format));
+        }
     }
 }
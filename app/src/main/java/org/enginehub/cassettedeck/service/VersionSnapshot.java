@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.service;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Multimaps;
+import org.enginehub.cassettedeck.data.downstream.Cursor;
+import org.enginehub.cassettedeck.data.downstream.VersionCursor;
+import org.enginehub.cassettedeck.data.upstream.MinecraftVersionType;
+import org.enginehub.cassettedeck.db.gen.tables.pojos.MinecraftVersionEntry;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * An immutable copy of the {@code minecraft_version} table, indexed for each of our read paths.
+ *
+ * <p>
+ * The table is small enough that holding all of it is cheap, and replacing the whole snapshot on insert means readers
+ * never need to lock.
+ * </p>
+ */
+final class VersionSnapshot {
+    /**
+     * Newest first. Ties are broken by version so that the order is stable.
+     */
+    static final Comparator<MinecraftVersionEntry> NEWEST_FIRST = Comparator
+        .comparing(MinecraftVersionEntry::releaseDate, Comparator.nullsLast(Comparator.reverseOrder()))
+        .thenComparing(MinecraftVersionEntry::version, Comparator.reverseOrder());
+
+    static VersionSnapshot of(Collection<MinecraftVersionEntry> entries) {
+        var byVersion = new HashMap<String, MinecraftVersionEntry>(entries.size());
+        for (MinecraftVersionEntry entry : entries) {
+            byVersion.put(entry.version(), entry);
+        }
+        return new VersionSnapshot(byVersion);
+    }
+
+    private final ImmutableMap<String, MinecraftVersionEntry> byVersion;
+    private final ImmutableSortedMap<Integer, List<MinecraftVersionEntry>> byDataVersion;
+    private final MinecraftVersionEntry[] byReleaseDate;
+
+    private VersionSnapshot(Map<String, MinecraftVersionEntry> byVersion) {
+        this.byVersion = ImmutableMap.copyOf(byVersion);
+        this.byReleaseDate = byVersion.values().toArray(MinecraftVersionEntry[]::new);
+        Arrays.sort(this.byReleaseDate, NEWEST_FIRST);
+        var byDataVersion = ImmutableListMultimap.<Integer, MinecraftVersionEntry>builder();
+        for (MinecraftVersionEntry entry : this.byReleaseDate) {
+            if (entry.dataVersion() != null) {
+                byDataVersion.put(entry.dataVersion(), entry);
+            }
+        }
+        this.byDataVersion = ImmutableSortedMap.copyOf(Multimaps.asMap(byDataVersion.build()));
+    }
+
+    /**
+     * Create a new snapshot with the given entries added. Entries for versions that are already present are ignored,
+     * as the database would have rejected them.
+     *
+     * @param entries the entries to add
+     * @return the new snapshot
+     */
+    VersionSnapshot with(Collection<MinecraftVersionEntry> entries) {
+        var byVersion = new HashMap<>(this.byVersion);
+        for (MinecraftVersionEntry entry : entries) {
+            byVersion.putIfAbsent(entry.version(), entry);
+        }
+        return new VersionSnapshot(byVersion);
+    }
+
+    boolean contains(String version) {
+        return byVersion.containsKey(version);
+    }
+
+    @Nullable MinecraftVersionEntry get(String version) {
+        return byVersion.get(version);
+    }
+
+    List<MinecraftVersionEntry> findByDataVersion(int dataVersion) {
+        return byDataVersion.getOrDefault(dataVersion, List.of());
+    }
+
+    /**
+     * Find the versions with a data version in a range, highest data version first, and newest first within each.
+     *
+     * @param from the lowest data version, inclusive
+     * @param to the highest data version, inclusive
+     * @param types the version types to include
+     * @return the matching versions
+     */
+    List<MinecraftVersionEntry> findByDataVersionRange(int from, int to, Set<MinecraftVersionType> types) {
+        var result = new ArrayList<MinecraftVersionEntry>();
+        for (List<MinecraftVersionEntry> entries : byDataVersion.subMap(from, true, to, true).descendingMap().values()) {
+            for (MinecraftVersionEntry entry : entries) {
+                if (hasType(entry, types)) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the versions released in a range, newest first. Versions without a release date are never included.
+     *
+     * @param since the earliest release date, inclusive
+     * @param until the latest release date, exclusive
+     * @param types the version types to include
+     * @return the matching versions
+     */
+    List<MinecraftVersionEntry> findByReleaseDateRange(Instant since, Instant until, Set<MinecraftVersionType> types) {
+        int start = firstIndexWhere(entry -> entry.releaseDate() == null || entry.releaseDate().isBefore(until));
+        int end = firstIndexWhere(entry -> entry.releaseDate() == null || entry.releaseDate().isBefore(since));
+        var result = new ArrayList<MinecraftVersionEntry>();
+        for (int i = start; i < end; i++) {
+            if (hasType(byReleaseDate[i], types)) {
+                result.add(byReleaseDate[i]);
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasType(MinecraftVersionEntry entry, Set<MinecraftVersionType> types) {
+        for (MinecraftVersionType type : types) {
+            if (type.jacksonName().equals(entry.type())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Cursor<MinecraftVersionEntry, VersionCursor> page(@Nullable VersionCursor after, int limit) {
+        int start = after == null ? 0 : firstIndexWhere(entry -> isAfter(entry, after));
+        int end = Math.min(byReleaseDate.length, start + Math.max(limit, 0));
+        List<MinecraftVersionEntry> items = List.of(Arrays.copyOfRange(byReleaseDate, start, end));
+        VersionCursor next = null;
+        if (!items.isEmpty() && items.size() == limit && items.getLast().releaseDate() != null) {
+            var last = items.getLast();
+            next = new VersionCursor(last.releaseDate(), last.version());
+        }
+        return new Cursor<>(items, next);
+    }
+
+    /**
+     * Find the index of the first entry in {@link #byReleaseDate} that matches. The predicate must not match any entry
+     * before one that it does match. This is a binary search, so deep pages cost the same as the first one.
+     */
+    private int firstIndexWhere(Predicate<MinecraftVersionEntry> predicate) {
+        int low = 0;
+        int high = byReleaseDate.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (predicate.test(byReleaseDate[mid])) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isAfter(MinecraftVersionEntry entry, VersionCursor cursor) {
+        Instant date = entry.releaseDate();
+        if (date == null) {
+            // Sorted to the end
+            return true;
+        }
+        int byDate = date.compareTo(cursor.releaseDate());
+        if (byDate != 0) {
+            return byDate < 0;
+        }
+        return entry.version().compareTo(cursor.version()) < 0;
+    }
+}
@@ -19,14 +19,47 @@
 package org.enginehub.cassettedeck.service;
 
 import org.enginehub.cassettedeck.data.downstream.CliData;
+import org.enginehub.cassettedeck.data.downstream.WireFormat;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 public interface WorldEditCliDataService {
 
+    /**
+     * Get the CLI data, already serialized to JSON. Prefer this when the document is only being passed on, as it
+     * skips parsing.
+     *
+     * @param dataVersion the data version
+     * @param cliDataVersion the CLI data version
+     * @return the JSON bytes, or {@code null} if there is no CLI data for the versions
+     */
+    byte @Nullable [] getCliDataJson(int dataVersion, int cliDataVersion) throws IOException;
+
+    /**
+     * Get the CLI data, serialized in the given format. Each encoding is made once and stored.
+     *
+     * @param dataVersion the data version
+     * @param cliDataVersion the CLI data version
+     * @param format the format
+     * @return the encoded bytes, or {@code null} if there is no CLI data for the versions
+     */
+    byte @Nullable [] getCliDataEncoded(int dataVersion, int cliDataVersion, WireFormat format) throws IOException;
+
     @Nullable CliData getCliData(int dataVersion, int cliDataVersion) throws IOException;
 
     void setCliData(int dataVersion, int cliDataVersion, CliData cliData) throws IOException;
 
+    /**
+     * Validate and store CLI data as it's read from a stream, without holding the whole document in memory.
+     *
+     * @param dataVersion the data version
+     * @param cliDataVersion the CLI data version
+     * @param json the JSON document
+     * @throws org.enginehub.cassettedeck.exception.InvalidBodyException if the document isn't valid CLI data
+     * @throws org.enginehub.cassettedeck.exception.PayloadTooLargeException if the document is too large
+     */
+    void setCliData(int dataVersion, int cliDataVersion, InputStream json) throws IOException;
+
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.servlet;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the body bytes written to a response. Characters written through {@link #getWriter()} are counted as one
+ * byte each, which is exact for the ASCII JSON we write that way.
+ */
+final class ByteCountingResponseWrapper extends HttpServletResponseWrapper {
+    private final AtomicLong written = new AtomicLong();
+    private @Nullable ServletOutputStream outputStream;
+    private @Nullable PrintWriter writer;
+
+    ByteCountingResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    long bytesWritten() {
+        return written.get();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new CountingOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new FilterWriter(super.getWriter()) {
+                @Override
+                public void write(int c) throws IOException {
+                    super.write(c);
+                    written.incrementAndGet();
+                }
+
+                @Override
+                public void write(char[] cbuf, int off, int len) throws IOException {
+                    super.write(cbuf, off, len);
+                    written.addAndGet(len);
+                }
+
+                @Override
+                public void write(String str, int off, int len) throws IOException {
+                    super.write(str, off, len);
+                    written.addAndGet(len);
+                }
+            });
+        }
+        return writer;
+    }
+
+    private final class CountingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        private CountingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            written.addAndGet(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.servlet;
+
+import com.google.common.base.Splitter;
+import com.google.common.net.HttpHeaders;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Finds the address of the client that made a request, looking through {@code X-Forwarded-For} when the request came
+ * from one of our own proxies.
+ */
+@Component
+public class ClientAddressResolver {
+    private static final Splitter FORWARDED_FOR_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final List<IpAddressMatcher> trustedProxies;
+
+    public ClientAddressResolver(
+        @Value("${rate-limit.trusted-proxies:}") List<String> trustedProxies
+    ) {
+        this.trustedProxies = trustedProxies.stream()
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .map(IpAddressMatcher::new)
+            .toList();
+    }
+
+    private boolean isTrusted(String address) {
+        for (IpAddressMatcher trustedProxy : trustedProxies) {
+            try {
+                if (trustedProxy.matches(address)) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                // Not an IP address, so definitely not one of ours
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolve the client address. {@code X-Forwarded-For} is read from right to left, and the first address that
+     * isn't a trusted proxy is the client. Addresses further left could have been made up by the client.
+     *
+     * @param request the request
+     * @return the client address
+     */
+    public String resolve(HttpServletRequest request) {
+        String address = request.getRemoteAddr();
+        if (trustedProxies.isEmpty() || !isTrusted(address)) {
+            return address;
+        }
+        String forwardedFor = request.getHeader(HttpHeaders.X_FORWARDED_FOR);
+        if (forwardedFor == null) {
+            return address;
+        }
+        List<String> hops = FORWARDED_FOR_SPLITTER.splitToList(forwardedFor);
+        for (int i = hops.size() - 1; i >= 0; i--) {
+            address = hops.get(i);
+            if (!isTrusted(address)) {
+                return address;
+            }
+        }
+        // Every hop was a proxy, so the leftmost is the best we have
+        return address;
+    }
+}
@@ -21,49 +21,154 @@ package org.enginehub.cassettedeck.servlet;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
 import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Map;
 
+/**
+ * Limits both how many requests a client makes and how many bytes it downloads.
+ *
+ * <p>
+ * Each request costs tokens according to {@code rate-limit.route-costs}. The response body is charged afterward
+ * against the client's bandwidth bucket and a global egress bucket. Those can go into debt, which blocks the client
+ * (or everyone, for egress) until they refill.
+ * </p>
+ */
+// After Spring Security, so the client is known, but before the ETag filter, so 304s are cheap
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER + 1)
 @Component
 public class RateLimitingFilter implements Filter {
+    private static final String ROLE_SERVER = "ROLE_SERVER";
+    private static final Duration ONE_SECOND = Duration.ofSeconds(1);
 
-    private static Bucket createNewBucket() {
-        long overdraft = 50;
-        Refill refill = Refill.greedy(10, Duration.ofSeconds(1));
-        Bandwidth limit = Bandwidth.classic(overdraft, refill);
-        return Bucket.builder().addLimit(limit).build();
+    private record ClientBuckets(
+        TokenBucket requests,
+        TokenBucket bandwidth
+    ) {
     }
 
-    private final LoadingCache<String, Bucket> bucketCache = CacheBuilder.newBuilder()
-        .build(CacheLoader.from(RateLimitingFilter::createNewBucket));
+    private final ClientAddressResolver clientAddressResolver;
+    private final Map<String, Long> routeCosts;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final LoadingCache<String, ClientBuckets> bucketCache;
+    private final TokenBucket egress;
+
+    public RateLimitingFilter(
+        ClientAddressResolver clientAddressResolver,
+        @Value("${rate-limit.capacity:50}") long capacity,
+        @Value("${rate-limit.refill-per-second:10}") long refillPerSecond,
+        @Value("#{${rate-limit.route-costs:{:}}}") Map<String, Long> routeCosts,
+        @Value("${rate-limit.bandwidth.capacity-bytes:67108864}") long bandwidthCapacity,
+        @Value("${rate-limit.bandwidth.bytes-per-second:4194304}") long bandwidthPerSecond,
+        @Value("${rate-limit.egress.capacity-bytes:268435456}") long egressCapacity,
+        @Value("${rate-limit.egress.bytes-per-second:33554432}") long egressPerSecond,
+        @Value("${rate-limit.max-clients:100000}") long maxClients,
+        @Value("${rate-limit.client-expiry:PT10M}") Duration clientExpiry
+    ) {
+        this.clientAddressResolver = clientAddressResolver;
+        this.routeCosts = routeCosts;
+        this.bucketCache = CacheBuilder.newBuilder()
+            .maximumSize(maxClients)
+            // An idle client's buckets would be full again anyway
+            .expireAfterAccess(clientExpiry)
+            .build(CacheLoader.from(() -> new ClientBuckets(
+                new TokenBucket(capacity, refillPerSecond, ONE_SECOND),
+                new TokenBucket(bandwidthCapacity, bandwidthPerSecond, ONE_SECOND)
+            )));
+        this.egress = new TokenBucket(egressCapacity, egressPerSecond, ONE_SECOND);
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getAuthorities().stream()
+            .anyMatch(a -> ROLE_SERVER.equals(a.getAuthority()))) {
+            return "token:" + authentication.getPrincipal();
+        }
+        // Everyone else is anonymous, so tell them apart by address
+        return "address:" + clientAddressResolver.resolve(request);
+    }
+
+    private long routeCost(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        for (Map.Entry<String, Long> entry : routeCosts.entrySet()) {
+            if (pathMatcher.match(entry.getKey(), path)) {
+                return entry.getValue();
+            }
+        }
+        return 1;
+    }
 
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
-        var token = (String) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-
-        Bucket bucket = bucketCache.getUnchecked(token);
-
-        if (bucket.tryConsume(1)) {
-            // the limit is not exceeded
-            filterChain.doFilter(servletRequest, servletResponse);
-        } else {
-            // limit is exceeded
-            HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
-            httpResponse.setContentType("application/json");
-            httpResponse.setStatus(429);
-            httpResponse.getWriter().append(
-                """
-                {"code":"rate.limit.exceeded"}
-                """
-            );
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        ClientBuckets buckets = bucketCache.getUnchecked(clientKey(request));
+
+        if (!egress.hasTokens()) {
+            reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "egress.limit.exceeded");
+            return;
         }
+        if (!buckets.bandwidth().hasTokens() || !buckets.requests().tryConsume(routeCost(request))) {
+            reject(response, 429, "rate.limit.exceeded");
+            return;
+        }
+
+        var countingResponse = new ByteCountingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, countingResponse);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // The body is still being written, charge once it's done
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        chargeBytes(buckets, countingResponse);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                chargeBytes(buckets, countingResponse);
+            }
+        }
+    }
+
+    private void chargeBytes(ClientBuckets buckets, ByteCountingResponseWrapper response) {
+        long bytes = response.bytesWritten();
+        if (bytes > 0) {
+            buckets.bandwidth().forceConsume(bytes);
+            egress.forceConsume(bytes);
+        }
+    }
+
+    private static void reject(HttpServletResponse response, int status, String code) throws IOException {
+        response.setContentType("application/json");
+        response.setStatus(status);
+        response.getWriter().append(
+            """
+            {"code":"%s"}
+            """.formatted(code)
+        );
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.servlet;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, implemented as a generic cell rate algorithm.
+ *
+ * <p>
+ * The whole state is one {@code long}: the time at which the bucket will be full again. Consuming tokens pushes that
+ * time forward, and is rejected if it would end up more than a full bucket ahead of now. Nothing is allocated when
+ * consuming.
+ * </p>
+ */
+public final class TokenBucket {
+    // The cost of a token is kept as the ratio refillPeriodNanos / refillTokens, as it's rarely a whole number of nanos
+    private final long refillPeriodNanos;
+    private final long refillTokens;
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * Create a full bucket.
+     *
+     * @param capacity the maximum number of tokens
+     * @param refillTokens the number of tokens refilled every {@code refillPeriod}
+     * @param refillPeriod the refill period
+     */
+    public TokenBucket(long capacity, long refillTokens, Duration refillPeriod) {
+        if (capacity <= 0 || refillTokens <= 0) {
+            throw new IllegalArgumentException("Capacity and refill must be positive");
+        }
+        this.refillPeriodNanos = refillPeriod.toNanos();
+        this.refillTokens = refillTokens;
+        this.nanosPerToken = costOf(1);
+        this.capacityNanos = costOf(capacity);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * {@return how long it takes to refill the tokens, rounded up so that the rate is never looser than configured}
+     */
+    private long costOf(long tokens) {
+        long high = Math.multiplyHigh(tokens, refillPeriodNanos);
+        long low = tokens * refillPeriodNanos;
+        if (high == 0 && low >= 0) {
+            return Math.max(1, Math.ceilDiv(low, refillTokens));
+        }
+        // The product overflows a long, capped well past any real capacity
+        return BigInteger.valueOf(tokens).multiply(BigInteger.valueOf(refillPeriodNanos))
+            .add(BigInteger.valueOf(refillTokens - 1))
+            .divide(BigInteger.valueOf(refillTokens))
+            .min(BigInteger.valueOf(Long.MAX_VALUE / 2))
+            .longValue();
+    }
+
+    /**
+     * Try to take tokens from the bucket.
+     *
+     * @param tokens the number of tokens to take
+     * @return {@code true} if there were enough tokens, in which case they were taken
+     */
+    public boolean tryConsume(long tokens) {
+        long cost = costOf(tokens);
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            // nanoTime can wrap, so only compare differences
+            long next = (current - now > 0 ? current : now) + cost;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take tokens even if there aren't enough. The bucket goes into debt, and stays empty until it has refilled past
+     * the debt. Used to charge for costs only known after the fact.
+     *
+     * @param tokens the number of tokens to take
+     */
+    public void forceConsume(long tokens) {
+        long cost = costOf(tokens);
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + cost;
+            if (fullAt.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@return whether at least one token is available}
+     */
+    public boolean hasTokens() {
+        long now = System.nanoTime();
+        long current = fullAt.get();
+        return current - now <= capacityNanos - nanosPerToken;
+    }
+}
@@ -20,8 +20,12 @@ package org.enginehub.cassettedeck.util;
 
 import com.google.common.collect.ImmutableMap;
 import org.enginehub.cassettedeck.data.downstream.BlockStates;
+import org.enginehub.cassettedeck.data.downstream.StatePalette;
 import org.enginehub.cassettedeck.data.upstream.MojangBlockStates;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -40,9 +44,13 @@ public class BlockStateConverter {
             Map<String, BlockStates.BlockProperty> build = state.properties() == null
                 ? Map.of()
                 : getPropertyMap(state.properties());
-            mapping.put(id, new BlockStates.BlockStateData(
+            String internedId = BlockStateInterner.string(id);
+            mapping.put(internedId, new BlockStates.BlockStateData(
                 new BlockStates.BlockState(
-                    id, Objects.requireNonNullElse(defaultState.properties(), Map.of())
+                    internedId,
+                    BlockStateInterner.stateProperties(
+                        Objects.requireNonNullElse(defaultState.properties(), Map.of())
+                    )
                 ),
                 build
             ));
@@ -50,15 +58,58 @@ public class BlockStateConverter {
         return new BlockStates(mapping.build());
     }
 
+    /**
+     * Build the state ID palette. This needs the state IDs from the report, which the converted block states don't
+     * keep.
+     *
+     * @param mojangBlockStates the report
+     * @return the palette, or {@code null} if the report is missing state IDs
+     */
+    public static @Nullable StatePalette convertPalette(MojangBlockStates mojangBlockStates) {
+        var blocks = new ArrayList<StatePalette.Block>(mojangBlockStates.mapping().size());
+        var states = new ArrayList<StatePalette.@Nullable State>();
+        for (var entry : mojangBlockStates.mapping().entrySet()) {
+            int blockIndex = blocks.size();
+            var propertyMap = Objects.requireNonNullElse(entry.getValue().properties(), Map.<String, Set<String>>of());
+            var properties = propertyMap.entrySet().stream()
+                .map(property -> new StatePalette.Property(property.getKey(), List.copyOf(property.getValue())))
+                .toList();
+            blocks.add(new StatePalette.Block(entry.getKey(), properties));
+            for (MojangBlockStates.BlockState state : entry.getValue().states()) {
+                Integer id = state.id();
+                if (id == null) {
+                    return null;
+                }
+                var stateProperties = Objects.requireNonNullElse(state.properties(), Map.<String, String>of());
+                int[] ordinals = new int[properties.size()];
+                for (int i = 0; i < ordinals.length; i++) {
+                    var property = properties.get(i);
+                    ordinals[i] = property.values().indexOf(stateProperties.get(property.name()));
+                    if (ordinals[i] == -1) {
+                        throw new IllegalStateException(
+                            "State " + id + " of " + entry.getKey() + " has no valid value for " + property.name()
+                        );
+                    }
+                }
+                while (states.size() <= id) {
+                    states.add(null);
+                }
+                states.set(id, new StatePalette.State(blockIndex, ordinals));
+            }
+        }
+        return new StatePalette(blocks, states);
+    }
+
     private static Map<String, BlockStates.BlockProperty> getPropertyMap(Map<String, Set<String>> mojangProps) {
         var properties = ImmutableMap.<String, BlockStates.BlockProperty>builderWithExpectedSize(
             mojangProps.size()
         );
+        // Most properties are shared by many blocks, so use the shared instances
         mojangProps.forEach((propName, propValues) ->
-            properties.put(propName, new BlockStates.BlockProperty(
-                inferType(propValues),
-                propValues
-            ))
+            properties.put(
+                BlockStateInterner.string(propName),
+                BlockStateInterner.property(inferType(propValues), propValues)
+            )
         );
         return properties.build();
     }
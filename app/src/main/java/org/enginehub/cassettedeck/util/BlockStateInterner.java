@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.enginehub.cassettedeck.data.downstream.BlockStates;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical instances for the repetitive parts of block states, such as the many identical {@code facing} and
+ * {@code waterlogged} properties. Everything is held weakly, so instances live only as long as some document uses
+ * them.
+ *
+ * <p>
+ * Value sets are keyed by their order, not set equality, as the order of a property's values is meaningful.
+ * </p>
+ */
+public final class BlockStateInterner {
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final ConcurrentMap<List<String>, ImmutableSet<String>> VALUE_SETS = weakValues();
+    private static final ConcurrentMap<PropertyKey, BlockStates.BlockProperty> PROPERTIES = weakValues();
+    private static final ConcurrentMap<List<Map.Entry<String, String>>, ImmutableMap<String, String>>
+        STATE_PROPERTIES = weakValues();
+
+    private record PropertyKey(BlockStates.BlockProperty.Type type, List<String> values) {
+    }
+
+    private static <K, V> ConcurrentMap<K, V> weakValues() {
+        return CacheBuilder.newBuilder().weakValues().<K, V>build().asMap();
+    }
+
+    public static String string(String value) {
+        return STRINGS.intern(value);
+    }
+
+    public static ImmutableSet<String> values(Collection<String> values) {
+        return VALUE_SETS.computeIfAbsent(strings(values), ImmutableSet::copyOf);
+    }
+
+    public static BlockStates.BlockProperty property(BlockStates.BlockProperty.Type type, Collection<String> values) {
+        return PROPERTIES.computeIfAbsent(
+            new PropertyKey(type, strings(values)),
+            key -> new BlockStates.BlockProperty(key.type(), values(key.values()))
+        );
+    }
+
+    public static ImmutableMap<String, String> stateProperties(Map<String, String> properties) {
+        var entries = ImmutableList.<Map.Entry<String, String>>builderWithExpectedSize(properties.size());
+        properties.forEach((name, value) -> entries.add(Map.entry(string(name), string(value))));
+        return STATE_PROPERTIES.computeIfAbsent(entries.build(), ImmutableMap::copyOf);
+    }
+
+    /**
+     * Replace every part of a block's data with its canonical instance.
+     *
+     * @param data the block's data
+     * @return the canonical data
+     */
+    public static BlockStates.BlockStateData blockStateData(BlockStates.BlockStateData data) {
+        var properties = ImmutableMap.<String, BlockStates.BlockProperty>builderWithExpectedSize(
+            data.properties().size()
+        );
+        data.properties().forEach((name, property) ->
+            properties.put(string(name), property(property.type(), property.values()))
+        );
+        return new BlockStates.BlockStateData(
+            new BlockStates.BlockState(
+                string(data.defaultState().id()),
+                stateProperties(data.defaultState().properties())
+            ),
+            properties.build()
+        );
+    }
+
+    /**
+     * Replace every part of a document with its canonical instance.
+     *
+     * @param blockStates the document
+     * @return the canonical document
+     */
+    public static BlockStates intern(BlockStates blockStates) {
+        var blocks = ImmutableMap.<String, BlockStates.BlockStateData>builderWithExpectedSize(
+            blockStates.blocks().size()
+        );
+        blockStates.blocks().forEach((id, data) -> blocks.put(string(id), blockStateData(data)));
+        return new BlockStates(blocks.build());
+    }
+
+    private static ImmutableList<String> strings(Collection<String> values) {
+        var interned = ImmutableList.<String>builderWithExpectedSize(values.size());
+        for (String value : values) {
+            interned.add(string(value));
+        }
+        return interned.build();
+    }
+
+    private BlockStateInterner() {
+    }
+}
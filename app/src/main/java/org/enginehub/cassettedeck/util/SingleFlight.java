@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.util;
+
+import org.apache.commons.io.function.IOSupplier;
+import org.enginehub.cassettedeck.exception.LoadTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes concurrent loads of the same key share one call to the loader. The first caller runs the load, and everyone
+ * else arriving before it finishes waits for its result, for up to the timeout.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+
+    public SingleFlight(Duration timeout) {
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Load the value for a key, or wait for a load that is already running.
+     *
+     * @param key the key
+     * @param loader the loader, only called if no load is running
+     * @return the loaded value
+     * @throws IOException if the load failed
+     * @throws LoadTimeoutException if we waited too long for another caller's load
+     */
+    public V load(K key, IOSupplier<V> loader) throws IOException {
+        var ours = new CompletableFuture<V>();
+        var running = inFlight.putIfAbsent(key, ours);
+        if (running == null) {
+            try {
+                V value = loader.get();
+                ours.complete(value);
+                return value;
+            } catch (Throwable t) {
+                ours.completeExceptionally(t);
+                throw t;
+            } finally {
+                inFlight.remove(key, ours);
+            }
+        }
+        try {
+            return running.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new LoadTimeoutException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for load of " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioe) {
+                throw new IOException("Shared load of " + key + " failed", ioe);
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException("Shared load of " + key + " failed", cause);
+        }
+    }
+
+    /**
+     * Stop sharing the load running for a key, if any. Callers arriving after this start a new load, for when the
+     * running one may have read outdated data.
+     *
+     * @param key the key
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * Stop sharing every running load.
+     */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) EngineHub <https://enginehub.org>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.cassettedeck.util;
+
+import org.enginehub.cassettedeck.exception.PayloadTooLargeException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with {@link PayloadTooLargeException} once more than a set number of bytes are read, instead of truncating.
+ */
+public final class SizeLimitedInputStream extends FilterInputStream {
+    private final long limit;
+    private long remaining;
+    private long mark = -1;
+
+    public SizeLimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+        this.remaining = limit;
+    }
+
+    private void consumed(long count) {
+        remaining -= count;
+        if (remaining < 0) {
+            throw new PayloadTooLargeException(limit);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            consumed(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        // Reading one past the limit is enough to know it was exceeded
+        int read = super.read(b, off, (int) Math.min(len, remaining + 1));
+        if (read > 0) {
+            consumed(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, remaining + 1));
+        consumed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        super.mark(readlimit);
+        mark = remaining;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        remaining = mark;
+    }
+}